@@ -0,0 +1,99 @@
+package rx.bukkit.benchmarks;
+
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.PluginCommand;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rx.Subscription;
+import rx.bukkit.FakeServer;
+import rx.bukkit.TestPlugin;
+import rx.bukkit.observable.BukkitObservable;
+import rx.bukkit.observable.CommandEvent;
+import rx.functions.Action1;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright 2014 Ryan Michela
+ *
+ * Measures dispatching a command to the subscribers of {@link BukkitObservable#fromBukkitCommand}, by calling the
+ * executor the observable installs on the plugin command, as the server does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandDispatchBenchmark {
+    @Param({"1", "10", "100"})
+    public int subscribers;
+
+    private final String[] args = {"arg0", "arg1"};
+    private TestPlugin plugin;
+    private PluginCommand command;
+    private CommandExecutor executor;
+    private CommandSender sender;
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private long received;
+
+    private final Action1<CommandEvent> onNext = new Action1<CommandEvent>() {
+        @Override
+        public void call(CommandEvent commandEvent) {
+            received += commandEvent.getArgs().length;
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        plugin = new TestPlugin(new FakeServer(), "CommandDispatchBenchmark", "benchmark");
+        plugin.enable();
+
+        for (int i = 0; i < subscribers; i++) {
+            subscriptions.add(BukkitObservable.fromBukkitCommand(plugin, "benchmark").subscribe(onNext));
+        }
+        command = plugin.getCommand("benchmark");
+        executor = command.getExecutor();
+
+        sender = (CommandSender) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {CommandSender.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (Subscription subscription : subscriptions) {
+            subscription.unsubscribe();
+        }
+        subscriptions.clear();
+        plugin.disable();
+    }
+
+    /**
+     * Dispatches a command to all subscribers.
+     */
+    @Benchmark
+    public long onCommand() {
+        executor.onCommand(sender, command, "benchmark", args);
+        return received;
+    }
+}
@@ -0,0 +1,138 @@
+package rx.bukkit.benchmarks;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.PluginManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rx.Subscription;
+import rx.bukkit.FakeServer;
+import rx.bukkit.TestPlugin;
+import rx.bukkit.observable.BukkitObservable;
+import rx.functions.Action1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright 2014 Ryan Michela
+ *
+ * Measures dispatching an event to subscribers of {@link BukkitObservable#fromBukkitEvent}, against the same number
+ * of plain listeners registered with the plugin manager, and the cost of subscribing and unsubscribing one more.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventDispatchBenchmark {
+    public static enum Path {OBSERVABLE, LISTENER}
+
+    public static class BenchmarkEvent extends Event {
+        private static final HandlerList handlers = new HandlerList();
+
+        @Override
+        public HandlerList getHandlers() {
+            return handlers;
+        }
+
+        public static HandlerList getHandlerList() {
+            return handlers;
+        }
+    }
+
+    @Param({"1", "10", "100"})
+    public int subscribers;
+
+    @Param({"OBSERVABLE", "LISTENER"})
+    public Path path;
+
+    private final BenchmarkEvent event = new BenchmarkEvent();
+    private FakeServer server;
+    private TestPlugin plugin;
+    private PluginManager pluginManager;
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private long received;
+
+    private final Action1<BenchmarkEvent> onNext = new Action1<BenchmarkEvent>() {
+        @Override
+        public void call(BenchmarkEvent event) {
+            received++;
+        }
+    };
+
+    private final EventExecutor eventExecutor = new EventExecutor() {
+        @Override
+        public void execute(Listener listener, Event event) throws EventException {
+            received++;
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        server = new FakeServer();
+        plugin = new TestPlugin(server, "EventDispatchBenchmark");
+        plugin.enable();
+        pluginManager = server.getPluginManager();
+
+        for (int i = 0; i < subscribers; i++) {
+            if (path == Path.OBSERVABLE) {
+                subscriptions.add(BukkitObservable.fromBukkitEvent(plugin, BenchmarkEvent.class).subscribe(onNext));
+            } else {
+                pluginManager.registerEvent(BenchmarkEvent.class, new Listener() {}, EventPriority.NORMAL, eventExecutor, plugin, false);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (Subscription subscription : subscriptions) {
+            subscription.unsubscribe();
+        }
+        subscriptions.clear();
+        HandlerList.unregisterAll(plugin);
+        plugin.disable();
+    }
+
+    /**
+     * Calls the event, fanning it out to all subscribers.
+     */
+    @Benchmark
+    public long callEvent() {
+        pluginManager.callEvent(event);
+        return received;
+    }
+
+    /**
+     * Subscribes one more observer or listener and removes it again, registering and unregistering it with the
+     * handler lists. An observer also registers a {@link org.bukkit.event.server.PluginDisableEvent} handler to
+     * complete on disable, which its unsubscription removes again, so every invocation starts from the same
+     * {@code subscribers} registrations. Bukkit checks for duplicates when registering, so the cost grows with them.
+     */
+    @Benchmark
+    public void subscribeUnsubscribe() {
+        if (path == Path.OBSERVABLE) {
+            BukkitObservable.fromBukkitEvent(plugin, BenchmarkEvent.class).subscribe(onNext).unsubscribe();
+        } else {
+            Listener listener = new Listener() {};
+            pluginManager.registerEvent(BenchmarkEvent.class, listener, EventPriority.NORMAL, eventExecutor, plugin, false);
+            HandlerList.unregisterAll(listener);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package rx.bukkit.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rx.Observable;
+import rx.Scheduler;
+import rx.bukkit.FakeServer;
+import rx.bukkit.TestPlugin;
+import rx.bukkit.scheduler.BukkitRxScheduler;
+import rx.functions.Action0;
+import rx.functions.Action1;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright 2014 Ryan Michela
+ *
+ * Measures scheduling work on a {@link BukkitRxScheduler} and dispatching it on the next tick, through the
+ * {@link java.util.concurrent.Executor} interface used by tasks, through a worker as used by RxJava operators, and
+ * through {@code observeOn}. Times are per command.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SchedulerBenchmark {
+    private static final int BATCH = 100;
+
+    @Param({"SYNCHRONOUS", "ASYNCHRONOUS"})
+    public BukkitRxScheduler.ConcurrencyMode concurrencyMode;
+
+    private FakeServer server;
+    private TestPlugin plugin;
+    private BukkitRxScheduler scheduler;
+    private Scheduler.Worker worker;
+    private long ran;
+
+    private final Runnable command = new Runnable() {
+        @Override
+        public void run() {
+            ran++;
+        }
+    };
+
+    private final Action0 action = new Action0() {
+        @Override
+        public void call() {
+            ran++;
+        }
+    };
+
+    private final Action1<Integer> onNext = new Action1<Integer>() {
+        @Override
+        public void call(Integer value) {
+            ran += value;
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        server = new FakeServer();
+        plugin = new TestPlugin(server, "SchedulerBenchmark");
+        plugin.enable();
+        scheduler = BukkitRxScheduler.forPlugin(plugin, concurrencyMode);
+        worker = scheduler.createWorker();
+    }
+
+    @TearDown
+    public void tearDown() {
+        worker.unsubscribe();
+        plugin.disable();
+    }
+
+    /**
+     * Schedules a single command and runs the tick dispatching it.
+     */
+    @Benchmark
+    public long execute() {
+        scheduler.execute(command);
+        server.tick();
+        return ran;
+    }
+
+    /**
+     * Schedules a batch of commands, as a busy tick would, and dispatches them in one tick.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long executeBatch() {
+        for (int i = 0; i < BATCH; i++) {
+            scheduler.execute(command);
+        }
+        server.tick();
+        return ran;
+    }
+
+    /**
+     * Schedules an action through a worker, which tracks it for unsubscription, and dispatches it.
+     */
+    @Benchmark
+    public long workerSchedule() {
+        worker.schedule(action);
+        server.tick();
+        return ran;
+    }
+
+    /**
+     * Moves a batch of values onto the scheduler with {@code observeOn}.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long observeOn() {
+        Observable.range(0, BATCH).observeOn(scheduler).subscribe(onNext);
+        server.runUntilIdle();
+        return ran;
+    }
+}
@@ -0,0 +1,123 @@
+package rx.bukkit.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rx.bukkit.FakeServer;
+import rx.bukkit.TestPlugin;
+import rx.bukkit.task.Task;
+import rx.bukkit.task.TaskCompletionSource;
+import rx.bukkit.task.TaskFactory;
+import rx.bukkit.task.TaskFunc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright 2014 Ryan Michela
+ *
+ * Measures {@link Task} composition: a chain of {@code continueWith} calls, and {@code whenAll} and
+ * {@code whenAny} over pending tasks, each run until the result is available. Continuations are dispatched through
+ * the plugin's schedulers on the {@link FakeServer}; the first one of the chain is queued for the next tick, and the
+ * others run right after it in that tick, as they use the same executor.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TaskBenchmark {
+    /** The length of the chain, or the number of tasks waited for. */
+    @Param({"1", "10", "100"})
+    public int size;
+
+    private FakeServer server;
+    private TestPlugin plugin;
+    private TaskFactory taskFactory;
+
+    private final TaskFunc<Integer, Integer> increment = new TaskFunc<Integer, Integer>() {
+        @Override
+        public Integer call(Task<Integer> task) {
+            return task.getRaw() + 1;
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        server = new FakeServer();
+        plugin = new TestPlugin(server, "TaskBenchmark");
+        plugin.enable();
+        taskFactory = plugin.getTaskFactory();
+    }
+
+    @TearDown
+    public void tearDown() {
+        plugin.disable();
+    }
+
+    /**
+     * Chains continuations onto a completed task and runs them.
+     */
+    @Benchmark
+    public Integer continueWith() {
+        Task<Integer> task = taskFactory.fromResult(0);
+        for (int i = 0; i < size; i++) {
+            task = task.continueWith(increment);
+        }
+        server.runUntilIdle();
+        return task.getRaw();
+    }
+
+    /**
+     * Waits for all of a set of pending tasks and completes every one of them.
+     */
+    @Benchmark
+    public List<Task<Integer>> whenAll() {
+        List<TaskCompletionSource<Integer>> sources = newSources();
+        Task<List<Task<Integer>>> all = taskFactory.whenAll(fromSources(sources));
+        for (int i = 0; i < size; i++) {
+            sources.get(i).set(i);
+        }
+        server.runUntilIdle();
+        return all.getRaw();
+    }
+
+    /**
+     * Waits for any of a set of pending tasks and completes one of them.
+     */
+    @Benchmark
+    public Integer whenAny() {
+        List<TaskCompletionSource<Integer>> sources = newSources();
+        Task<Integer> any = taskFactory.whenAny(fromSources(sources));
+        sources.get(size - 1).set(size);
+        server.runUntilIdle();
+        return any.getRaw();
+    }
+
+    private List<TaskCompletionSource<Integer>> newSources() {
+        List<TaskCompletionSource<Integer>> sources = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            sources.add(new TaskCompletionSource<Integer>());
+        }
+        return sources;
+    }
+
+    private List<Task<Integer>> fromSources(List<TaskCompletionSource<Integer>> sources) {
+        List<Task<Integer>> tasks = new ArrayList<>(sources.size());
+        for (TaskCompletionSource<Integer> source : sources) {
+            tasks.add(taskFactory.fromSource(source));
+        }
+        return tasks;
+    }
+}
@@ -0,0 +1,277 @@
+package rx.bukkit;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Copyright 2014 Ryan Michela
+ *
+ * Logs unhandled exceptions off the thread that raised them. Reporting an exception only enqueues it; a daemon thread
+ * groups the exceptions by their stack fingerprint and logs the stack trace of a group once per minute, summing up
+ * the repetitions in between, and logs at most 20 records per second overall. A broken pipeline that fails thousands
+ * of times per second thus costs a queue insertion per failure instead of a synchronous stack trace each. The queue
+ * is bounded, so exceptions beyond it are only counted.
+ * <p>
+ * The thread sleeps until an exception is reported or a summary is due, and ends once nothing is left to report; the
+ * next report starts a new one. A plugin being disabled calls {@link #flush}, so that its pending summaries are logged
+ * and its loggers and exceptions are let go.
+ */
+public final class ErrorReporter {
+    private static final ErrorReporter instance = new ErrorReporter();
+
+    private static final int MAX_QUEUED = 1024;
+    private static final int MAX_RECORDS_PER_SECOND = 20;
+    private static final long REPEAT_WINDOW = TimeUnit.MINUTES.toNanos(1);
+    private static final long FORGET_AFTER = 10 * REPEAT_WINDOW;
+    private static final long RETRY_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int FRAMES_PER_THROWABLE = 8;
+    private static final int MAX_CAUSES = 3;
+
+    private final Queue<Report> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong overflowed = new AtomicLong();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile Thread thread;
+
+    // guarded by this
+    private final Map<String, Group> groups = new HashMap<>();
+    private final long[] recentRecords = new long[MAX_RECORDS_PER_SECOND];
+    private int nextRecord;
+    private boolean recordsFull;
+
+    private static class Report {
+        private final Logger logger;
+        private final String message;
+        private final Throwable throwable;
+
+        private Report(Logger logger, String message, Throwable throwable) {
+            this.logger = logger;
+            this.message = message;
+            this.throwable = throwable;
+        }
+    }
+
+    private static class Group {
+        private final Logger logger;
+        // the message of the latest report, only displayed
+        private String message;
+        private Throwable last;
+        private long lastLogged;
+        private long lastSeen;
+        private int suppressed;
+
+        private Group(Logger logger, String message) {
+            this.logger = logger;
+            this.message = message;
+        }
+    }
+
+    private ErrorReporter() {
+    }
+
+    public static ErrorReporter getInstance() {
+        return instance;
+    }
+
+    /**
+     * Queues an exception to be logged as SEVERE. Never blocks; if the queue is full, the exception is only counted.
+     */
+    public void report(Logger logger, String message, Throwable throwable) {
+        int size = queued.incrementAndGet();
+        if (size > MAX_QUEUED) {
+            queued.decrementAndGet();
+            overflowed.incrementAndGet();
+            return;
+        }
+        queue.offer(new Report(logger, message, throwable));
+
+        if (!started.get() && started.compareAndSet(false, true)) {
+            Thread reporter = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    loop();
+                }
+            }, "RxBukkit error reporter");
+            reporter.setDaemon(true);
+            thread = reporter;
+            reporter.start();
+        } else if (size == 1) {
+            // the queue was empty, so the thread may be waiting for a summary
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Logs what is pending for the logger right away and forgets its groups, so that they no longer hold on to the
+     * logger and its exceptions. Reports queued for other loggers are handled as well.
+     */
+    public synchronized void flush(Logger logger) {
+        long now = System.nanoTime();
+        poll(now);
+
+        for (Iterator<Group> it = groups.values().iterator(); it.hasNext(); ) {
+            Group group = it.next();
+            if (group.logger != logger) {
+                continue;
+            }
+            if (group.suppressed > 0) {
+                group.logger.log(Level.SEVERE, group.message + ": repeated " + group.suppressed + " more times (" + group.last + ")");
+            }
+            it.remove();
+        }
+
+        // the thread may be able to end now
+        LockSupport.unpark(thread);
+    }
+
+    private void loop() {
+        while (true) {
+            long wait;
+            try {
+                wait = process(System.nanoTime());
+            } catch (Throwable t) {
+                // a failing handler must not stop the reporter
+                Logger.getLogger(ErrorReporter.class.getName()).log(Level.WARNING, "Failed to report an exception", t);
+                wait = RETRY_INTERVAL;
+            }
+
+            if (wait < 0) {
+                thread = null;
+                started.set(false);
+                // a report queued while ending would otherwise wait for the next one
+                if (queue.isEmpty() || !started.compareAndSet(false, true)) {
+                    return;
+                }
+                thread = Thread.currentThread();
+                continue;
+            }
+            LockSupport.parkNanos(this, wait);
+        }
+    }
+
+    /**
+     * Handles the queued reports and logs the summaries that are due.
+     *
+     * @return the nanoseconds until the next summary is due, or -1 if nothing is left to report
+     */
+    private synchronized long process(long now) {
+        poll(now);
+        return summarize(now);
+    }
+
+    private void poll(long now) {
+        Report report;
+        while ((report = queue.poll()) != null) {
+            queued.decrementAndGet();
+            handle(report, now);
+        }
+    }
+
+    private void handle(Report report, long now) {
+        String key = fingerprint(report);
+        Group group = groups.get(key);
+        if (group == null) {
+            group = new Group(report.logger, report.message);
+            group.lastLogged = now - REPEAT_WINDOW;
+            groups.put(key, group);
+        }
+        group.message = report.message;
+        group.last = report.throwable;
+        group.lastSeen = now;
+
+        if (now - group.lastLogged >= REPEAT_WINDOW && acquire(now)) {
+            String repeated = group.suppressed > 0 ? " (repeated " + group.suppressed + " times since the last report)" : "";
+            group.logger.log(Level.SEVERE, group.message + repeated, report.throwable);
+            group.lastLogged = now;
+            group.suppressed = 0;
+        } else {
+            group.suppressed++;
+        }
+    }
+
+    /**
+     * Logs a one line summary for groups that kept repeating after their stack trace was logged, and forgets groups
+     * that have been quiet for a while.
+     *
+     * @return the nanoseconds until the next summary is due, or -1 if no group is left
+     */
+    private long summarize(long now) {
+        long next = Long.MAX_VALUE;
+        for (Iterator<Group> it = groups.values().iterator(); it.hasNext(); ) {
+            Group group = it.next();
+            if (group.suppressed > 0) {
+                if (now - group.lastLogged < REPEAT_WINDOW) {
+                    next = Math.min(next, group.lastLogged + REPEAT_WINDOW - now);
+                } else if (acquire(now)) {
+                    group.logger.log(Level.SEVERE, group.message + ": repeated " + group.suppressed + " more times (" + group.last + ")");
+                    group.lastLogged = now;
+                    group.suppressed = 0;
+                    next = Math.min(next, group.lastSeen + FORGET_AFTER - now);
+                } else {
+                    next = Math.min(next, RETRY_INTERVAL);
+                }
+            } else if (now - group.lastSeen >= FORGET_AFTER) {
+                it.remove();
+            } else {
+                next = Math.min(next, group.lastSeen + FORGET_AFTER - now);
+            }
+        }
+
+        long lost = overflowed.get();
+        if (lost > 0) {
+            if (acquire(now)) {
+                overflowed.addAndGet(-lost);
+                Logger.getLogger(ErrorReporter.class.getName()).log(Level.SEVERE, lost + " exceptions were not reported because the queue was full");
+            } else {
+                next = Math.min(next, RETRY_INTERVAL);
+            }
+        }
+        return next == Long.MAX_VALUE ? -1 : Math.max(next, 1);
+    }
+
+    /**
+     * Allows a record if fewer than {@code MAX_RECORDS_PER_SECOND} were logged during the last second, keeping the
+     * times of the most recent ones in a ring.
+     */
+    private boolean acquire(long now) {
+        if (recordsFull && now - recentRecords[nextRecord] < TimeUnit.SECONDS.toNanos(1)) {
+            return false;
+        }
+        recentRecords[nextRecord] = now;
+        if (++nextRecord == MAX_RECORDS_PER_SECOND) {
+            nextRecord = 0;
+            recordsFull = true;
+        }
+        return true;
+    }
+
+    /**
+     * Identifies an exception by the logger and the classes and top frames of the exception and its causes, but not by
+     * the report or exception messages, which often contain ids or values, e.g. the id of a failed task.
+     */
+    private static String fingerprint(Report report) {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append(report.logger.getName());
+
+        Throwable t = report.throwable;
+        for (int cause = 0; t != null && cause <= MAX_CAUSES; cause++, t = t.getCause()) {
+            sb.append('|').append(t.getClass().getName());
+            StackTraceElement[] frames = t.getStackTrace();
+            for (int i = 0; i < frames.length && i < FRAMES_PER_THROWABLE; i++) {
+                sb.append(';').append(frames[i].getClassName()).append('.').append(frames[i].getMethodName())
+                        .append(':').append(frames[i].getLineNumber());
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -1,15 +1,14 @@
 package rx.bukkit;
 
 import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.java.JavaPlugin;
-import rx.Scheduler;
-import rx.bukkit.scheduler.BukkitRxScheduler;
+import org.bukkit.plugin.java.JavaPluginLoader;
+import rx.bukkit.scheduler.SharedSchedulers;
+import rx.bukkit.scheduler.ShutdownCoordinator;
 import rx.bukkit.task.TaskFactory;
-import rx.plugins.RxJavaDefaultSchedulers;
-import rx.plugins.RxJavaErrorHandler;
-import rx.plugins.RxJavaPlugins;
 
-import java.util.logging.Level;
+import java.io.File;
 
 /**
  * Copyright 2014 Ryan Michela
@@ -17,31 +16,24 @@ import java.util.logging.Level;
 public class RxJavaPlugin extends JavaPlugin {
     private final TaskFactory taskFactory = new TaskFactory(this);
 
+    public RxJavaPlugin() {
+    }
+
+    /**
+     * Creates the plugin outside of a plugin class loader, e.g. for tests and benchmarks, see the matching constructor
+     * of {@link JavaPlugin}.
+     */
+    protected RxJavaPlugin(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file) {
+        super(loader, description, dataFolder, file);
+    }
+
+    /**
+     * Registers the plugin with the server-wide {@link SharedSchedulers}. The global RxJava error handler and
+     * default schedulers are installed once, by the first plugin, and route to the plugin calling them.
+     * Call it from {@code onLoad} to use RxJava while loading, and from {@code onEnable} to be dropped on disable.
+     */
     public static void initializeRx(final Plugin plugin) {
-        // Register global error handler
-        RxJavaPlugins.getInstance().registerErrorHandler(new RxJavaErrorHandler() {
-            @Override
-            public void handleError(Throwable e) {
-                plugin.getLogger().log(Level.SEVERE, "Unhandled exception in observable", e);
-            }
-        });
-        // Register global schedulers
-        RxJavaPlugins.getInstance().registerDefaultSchedulers(new RxJavaDefaultSchedulers() {
-            @Override
-            public Scheduler getComputationScheduler() {
-                return BukkitRxScheduler.forPlugin(plugin, BukkitRxScheduler.ConcurrencyMode.SYNCHRONOUS);
-            }
-
-            @Override
-            public Scheduler getIOScheduler() {
-                return BukkitRxScheduler.forPlugin(plugin, BukkitRxScheduler.ConcurrencyMode.ASYNCHRONOUS);
-            }
-
-            @Override
-            public Scheduler getNewThreadScheduler() {
-                return BukkitRxScheduler.forPlugin(plugin, BukkitRxScheduler.ConcurrencyMode.ASYNCHRONOUS);
-            }
-        });
+        SharedSchedulers.register(plugin);
     }
 
     @Override
@@ -50,6 +42,25 @@ public class RxJavaPlugin extends JavaPlugin {
         initializeRx(this);
     }
 
+    @Override
+    public void onEnable() {
+        super.onEnable();
+        initializeRx(this);
+    }
+
+    /**
+     * Drains the work queued through the schedulers of this plugin, see {@link ShutdownCoordinator}, and flushes the
+     * exceptions it has left with the {@link ErrorReporter}. Subclasses overriding this method have to call it after
+     * their own shutdown work, e.g. after queuing their final saves.
+     */
+    @Override
+    public void onDisable() {
+        ShutdownCoordinator.forPlugin(this).drain();
+        SharedSchedulers.unregister(this);
+        ErrorReporter.getInstance().flush(getLogger());
+        super.onDisable();
+    }
+
     public TaskFactory getTaskFactory() {
         return taskFactory;
     }
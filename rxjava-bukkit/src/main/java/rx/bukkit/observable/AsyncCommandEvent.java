@@ -0,0 +1,26 @@
+package rx.bukkit.observable;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+
+/**
+ * Copyright 2014 Ryan Michela
+ *
+ * A {@link CommandEvent} delivered off the main thread. Replies are queued and sent to the sender on the main
+ * thread in a batch once per tick, so handlers never touch the Bukkit API directly.
+ */
+public class AsyncCommandEvent extends CommandEvent {
+    private final AsyncCommandExecutor executor;
+
+    AsyncCommandEvent(AsyncCommandExecutor executor, CommandSender sender, Command command, String label, String[] args) {
+        super(sender, command, label, args);
+        this.executor = executor;
+    }
+
+    /**
+     * Queues a message for delivery to the command sender on the next main thread flush.
+     */
+    public void reply(String message) {
+        executor.reply(getSender(), message);
+    }
+}
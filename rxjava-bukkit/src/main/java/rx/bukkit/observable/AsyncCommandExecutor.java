@@ -0,0 +1,150 @@
+package rx.bukkit.observable;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import rx.Subscriber;
+import rx.bukkit.scheduler.BukkitRxScheduler;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Copyright 2014 Ryan Michela
+ *
+ * Acknowledges commands on the main thread, hands them to subscribers on the asynchronous scheduler and flushes
+ * their replies back on the main thread once per tick. Unless created with {@link #UNLIMITED}, players are rate
+ * limited by a token bucket each.
+ */
+class AsyncCommandExecutor implements CommandExecutor {
+    /** The rate that disables rate limiting. */
+    static final double UNLIMITED = Double.POSITIVE_INFINITY;
+
+    private final BukkitRxScheduler asyncScheduler;
+    private final BukkitRxScheduler syncScheduler;
+    private final boolean rateLimited;
+    private final double burst;
+    private final double commandsPerSecond;
+    private final String rateLimitMessage;
+
+    private final List<Subscriber<? super AsyncCommandEvent>> subscribers = new CopyOnWriteArrayList<>();
+
+    // keyed by player entity id, only touched on the main thread
+    private final IntObjectMap<TokenBucket> buckets = new IntObjectMap<>();
+
+    private final Queue<Reply> replies = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private static class Reply {
+        private final CommandSender sender;
+        private final String message;
+
+        private Reply(CommandSender sender, String message) {
+            this.sender = sender;
+            this.message = message;
+        }
+    }
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled.set(false);
+
+            Map<CommandSender, List<String>> batches = new LinkedHashMap<>();
+            Reply reply;
+            while ((reply = replies.poll()) != null) {
+                List<String> batch = batches.get(reply.sender);
+                if (batch == null) {
+                    batch = new ArrayList<>();
+                    batches.put(reply.sender, batch);
+                }
+                batch.add(reply.message);
+            }
+
+            for (Map.Entry<CommandSender, List<String>> batch : batches.entrySet()) {
+                List<String> messages = batch.getValue();
+                batch.getKey().sendMessage(messages.toArray(new String[messages.size()]));
+            }
+        }
+    };
+
+    public AsyncCommandExecutor(Plugin plugin, double commandsPerSecond, int burst, String rateLimitMessage) {
+        this.asyncScheduler = BukkitRxScheduler.forPlugin(plugin, BukkitRxScheduler.ConcurrencyMode.ASYNCHRONOUS);
+        this.syncScheduler = BukkitRxScheduler.forPlugin(plugin, BukkitRxScheduler.ConcurrencyMode.SYNCHRONOUS);
+        this.rateLimited = commandsPerSecond != UNLIMITED;
+        this.commandsPerSecond = commandsPerSecond;
+        this.burst = burst;
+        this.rateLimitMessage = rateLimitMessage;
+    }
+
+    public void AddSubscriber(Subscriber<? super AsyncCommandEvent> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (rateLimited && sender instanceof Player && !acquire(((Player) sender).getEntityId())) {
+            sender.sendMessage(rateLimitMessage);
+            return true;
+        }
+
+        final AsyncCommandEvent commandEvent = new AsyncCommandEvent(this, sender, command, label, args);
+        asyncScheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Subscriber<? super AsyncCommandEvent> subscriber : subscribers) {
+                    if (subscriber.isUnsubscribed()) {
+                        // purge unsubscribed subscribers
+                        subscribers.remove(subscriber);
+                    } else {
+                        subscriber.onNext(commandEvent);
+                    }
+                }
+            }
+        });
+
+        // acknowledged, the handlers answer through AsyncCommandEvent.reply
+        return true;
+    }
+
+    public void forgetPlayer(Player player) {
+        buckets.remove(player.getEntityId());
+    }
+
+    boolean isRateLimited() {
+        return rateLimited;
+    }
+
+    /**
+     * Queues a reply and schedules a flush on the sync scheduler, which the shutdown drain also runs. Once the plugin
+     * has been disabled the flush is rejected with a {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    void reply(CommandSender sender, String message) {
+        replies.add(new Reply(sender, message));
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                syncScheduler.execute(flush);
+            } catch (RuntimeException e) {
+                flushScheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private boolean acquire(int entityId) {
+        TokenBucket bucket = buckets.get(entityId);
+        if (bucket == null) {
+            bucket = new TokenBucket(burst, commandsPerSecond);
+            buckets.put(entityId, bucket);
+        }
+        return bucket.tryAcquire();
+    }
+}
@@ -1,6 +1,7 @@
 package rx.bukkit.observable;
 
 import org.bukkit.event.*;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.event.server.PluginDisableEvent;
 import org.bukkit.plugin.EventExecutor;
 import org.bukkit.plugin.Plugin;
@@ -10,8 +11,11 @@ import rx.Subscriber;
 import rx.functions.Action0;
 import rx.subscriptions.Subscriptions;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Copyright 2014 Ryan Michela
@@ -38,7 +42,8 @@ public enum BukkitObservable { ;
 
                 final Listener listener = new Listener() {};
                 plugin.getServer().getPluginManager().registerEvent(eventClass, listener, priority, eventExecutor, plugin, ignoreCanceled);
-                registerCompletionOnDisable(subscriber, plugin, listener);
+                registerCompletionOnDisable(subscriber, plugin, new Listener() {
+                });
 
                 // Unregister the event handler on un-subscription
                 subscriber.add(Subscriptions.create(new Action0() {
@@ -70,7 +75,172 @@ public enum BukkitObservable { ;
         });
     }
 
-    private static void registerCompletionOnDisable(final Subscriber subscriber, final Plugin plugin, Listener listener) {
+    private static Map<String, AsyncCommandExecutor> establishedAsyncExecutors = new HashMap<>();
+
+    /**
+     * Creates an observable of command invocations that are acknowledged on the main thread and delivered to
+     * subscribers on the asynchronous scheduler, without rate limiting. Replies sent through
+     * {@link AsyncCommandEvent#reply(String)} are flushed back to the sender on the main thread once per tick.
+     */
+    public static Observable<AsyncCommandEvent> fromBukkitCommandAsync(JavaPlugin plugin, String command) {
+        return fromBukkitCommandAsync(plugin, command, AsyncCommandExecutor.UNLIMITED, 1, null);
+    }
+
+    /**
+     * Creates an observable like {@link #fromBukkitCommandAsync(JavaPlugin, String)} that rate limits players. Each
+     * player may issue {@code burst} commands at once, refilled at {@code commandsPerSecond}; excess invocations are
+     * rejected with a generic message before any async work is queued.
+     */
+    public static Observable<AsyncCommandEvent> fromBukkitCommandAsync(JavaPlugin plugin, String command, double commandsPerSecond, int burst) {
+        return fromBukkitCommandAsync(plugin, command, commandsPerSecond, burst, "You are sending commands too quickly.");
+    }
+
+    /**
+     * Creates an observable like {@link #fromBukkitCommandAsync(JavaPlugin, String, double, int)} that rejects excess
+     * invocations with the given message. The rate limit of a command is set by its first subscription.
+     */
+    public static Observable<AsyncCommandEvent> fromBukkitCommandAsync(final JavaPlugin plugin, final String command, final double commandsPerSecond, final int burst, final String rateLimitMessage) {
+        if (commandsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("commandsPerSecond must be positive and burst at least 1");
+        }
+
+        return Observable.create(new Observable.OnSubscribe<AsyncCommandEvent>() {
+            @Override
+            public void call(final Subscriber<? super AsyncCommandEvent> subscriber) {
+                if (!establishedAsyncExecutors.containsKey(command)) {
+                    final AsyncCommandExecutor executor = new AsyncCommandExecutor(plugin, commandsPerSecond, burst, rateLimitMessage);
+                    plugin.getCommand(command).setExecutor(executor);
+                    establishedAsyncExecutors.put(command, executor);
+
+                    if (executor.isRateLimited()) {
+                        // Forget the rate limit of players leaving the server
+                        plugin.getServer().getPluginManager().registerEvent(PlayerQuitEvent.class, new Listener() {}, EventPriority.MONITOR, new EventExecutor() {
+                            @Override
+                            public void execute(Listener listener, Event event) throws EventException {
+                                executor.forgetPlayer(((PlayerQuitEvent) event).getPlayer());
+                            }
+                        }, plugin, false);
+                    }
+                }
+
+                establishedAsyncExecutors.get(command).AddSubscriber(subscriber);
+                registerCompletionOnDisable(subscriber, plugin, new Listener() {
+                });
+            }
+        });
+    }
+
+    private static Map<String, MultiplexingTabCompleter> establishedCompleters = new HashMap<>();
+
+    /**
+     * Returns the prefix index backing tab completion of the given argument of a command, installing a
+     * tab completer on the command if none has been established yet.
+     */
+    public static TabCompletionIndex tabCompletionIndex(final JavaPlugin plugin, final String command, int argIndex) {
+        MultiplexingTabCompleter completer = establishedCompleters.get(command);
+        if (completer == null) {
+            completer = new MultiplexingTabCompleter();
+            plugin.getCommand(command).setTabCompleter(completer);
+            establishedCompleters.put(command, completer);
+        }
+        return completer.getIndex(argIndex);
+    }
+
+    /**
+     * Creates a subscriber that contributes candidate sets to the tab completion of the given argument of a command.
+     * Every emitted collection replaces the previous contribution of this subscriber; only the difference is applied
+     * to the shared index. The last contribution remains after completion and is withdrawn on error, on early
+     * un-subscription or when the plugin is disabled, whichever comes first; its disable listener is unregistered
+     * along with it.
+     */
+    public static Subscriber<Collection<String>> toBukkitTabComplete(final JavaPlugin plugin, final String command, int argIndex) {
+        final TabCompleteSubscriber subscriber = new TabCompleteSubscriber(tabCompletionIndex(plugin, command, argIndex));
+
+        EventExecutor disableExecutor = new EventExecutor() {
+            @Override
+            public void execute(Listener listener, Event event) throws EventException {
+                if (((PluginDisableEvent) event).getPlugin() == plugin) {
+                    subscriber.withdraw();
+                    subscriber.unsubscribe();
+                    establishedCompleters.remove(command);
+                }
+            }
+        };
+        plugin.getServer().getPluginManager().registerEvent(PluginDisableEvent.class, subscriber.listener, EventPriority.NORMAL, disableExecutor, plugin, false);
+
+        return subscriber;
+    }
+
+    private static class TabCompleteSubscriber extends Subscriber<Collection<String>> {
+        private final TabCompletionIndex index;
+        private final Listener listener = new Listener() {};
+        private Set<String> contributed = new HashSet<>();
+        private boolean completed;
+        private boolean withdrawn;
+
+        private TabCompleteSubscriber(TabCompletionIndex index) {
+            this.index = index;
+
+            // Withdraw the contribution on un-subscription, unless the source completed normally
+            add(Subscriptions.create(new Action0() {
+                @Override
+                public void call() {
+                    if (!isCompleted()) {
+                        withdraw();
+                    }
+                }
+            }));
+        }
+
+        @Override
+        public synchronized void onNext(Collection<String> snapshot) {
+            if (withdrawn) {
+                return;
+            }
+
+            Set<String> next = new HashSet<>(snapshot);
+
+            Set<String> removed = new HashSet<>(contributed);
+            removed.removeAll(next);
+            Set<String> added = new HashSet<>(next);
+            added.removeAll(contributed);
+
+            index.removeAll(removed);
+            index.addAll(added);
+            contributed = next;
+        }
+
+        @Override
+        public synchronized void onCompleted() {
+            completed = true;
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            withdraw();
+        }
+
+        private synchronized boolean isCompleted() {
+            return completed;
+        }
+
+        /**
+         * Removes the contribution from the index and stops listening for the plugin being disabled.
+         */
+        private void withdraw() {
+            synchronized (this) {
+                if (withdrawn) {
+                    return;
+                }
+                withdrawn = true;
+                index.removeAll(contributed);
+                contributed = new HashSet<>();
+            }
+            HandlerList.unregisterAll(listener);
+        }
+    }
+
+    private static void registerCompletionOnDisable(final Subscriber subscriber, final Plugin plugin, final Listener listener) {
         EventExecutor disableExecutor = new EventExecutor() {
             @Override
             public void execute(Listener listener, Event event) throws EventException {
@@ -80,5 +250,13 @@ public enum BukkitObservable { ;
             }
         };
         plugin.getServer().getPluginManager().registerEvent(PluginDisableEvent.class, listener, EventPriority.NORMAL, disableExecutor, plugin, false);
+
+        // Unregister the disable handler on un-subscription, from its own handler list only
+        subscriber.add(Subscriptions.create(new Action0() {
+            @Override
+            public void call() {
+                PluginDisableEvent.getHandlerList().unregister(listener);
+            }
+        }));
     }
 }
@@ -15,7 +15,7 @@ public class CommandEvent extends Event implements Cancellable {
     private String label;
     private String[] args;
     private boolean cancelled;
-    private HandlerList handlers = new HandlerList();
+    private static final HandlerList handlers = new HandlerList();
 
     public CommandEvent(CommandSender sender, Command command, String label, String[] args) {
         this.sender = sender;
@@ -55,4 +55,8 @@ public class CommandEvent extends Event implements Cancellable {
     public HandlerList getHandlers() {
         return handlers;
     }
+
+    public static HandlerList getHandlerList() {
+        return handlers;
+    }
 }
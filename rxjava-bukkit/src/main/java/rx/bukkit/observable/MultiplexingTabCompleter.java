@@ -0,0 +1,36 @@
+package rx.bukkit.observable;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabCompleter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copyright 2014 Ryan Michela
+ */
+class MultiplexingTabCompleter implements TabCompleter {
+    private final List<TabCompletionIndex> indexes = new ArrayList<>();
+
+    public synchronized TabCompletionIndex getIndex(int argIndex) {
+        while (indexes.size() <= argIndex) {
+            indexes.add(new TabCompletionIndex());
+        }
+        return indexes.get(argIndex);
+    }
+
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
+        int argIndex = args.length == 0 ? 0 : args.length - 1;
+        TabCompletionIndex index;
+        synchronized (this) {
+            if (argIndex >= indexes.size()) {
+                // no candidates registered for this argument, fall back to Bukkit's default completion
+                return null;
+            }
+            index = indexes.get(argIndex);
+        }
+        return index.complete(args.length == 0 ? "" : args[argIndex]);
+    }
+}
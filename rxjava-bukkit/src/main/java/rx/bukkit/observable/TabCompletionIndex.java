@@ -0,0 +1,105 @@
+package rx.bukkit.observable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Copyright 2014 Ryan Michela
+ *
+ * A sorted, case-insensitive prefix index of tab completion candidates. Candidates are reference counted so
+ * several sources may contribute the same name; a candidate disappears only once every source has withdrawn it.
+ * Lookups walk the sub-map bounded by the prefix, so answering a completion costs O(log n + k).
+ */
+public class TabCompletionIndex {
+    private final NavigableMap<String, Candidate> candidates = new TreeMap<>();
+
+    private static class Candidate {
+        private final String value;
+        private int references;
+
+        private Candidate(String value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * Adds a single candidate to the index.
+     */
+    public void add(String candidate) {
+        addAll(Collections.singleton(candidate));
+    }
+
+    /**
+     * Removes a single candidate from the index.
+     */
+    public void remove(String candidate) {
+        removeAll(Collections.singleton(candidate));
+    }
+
+    /**
+     * Adds a batch of candidates to the index under a single lock acquisition.
+     */
+    public synchronized void addAll(Collection<String> added) {
+        for (String value : added) {
+            String key = keyOf(value);
+            Candidate candidate = candidates.get(key);
+            if (candidate == null) {
+                candidate = new Candidate(value);
+                candidates.put(key, candidate);
+            }
+            candidate.references++;
+        }
+    }
+
+    /**
+     * Removes a batch of candidates from the index under a single lock acquisition.
+     */
+    public synchronized void removeAll(Collection<String> removed) {
+        for (String value : removed) {
+            String key = keyOf(value);
+            Candidate candidate = candidates.get(key);
+            if (candidate != null && --candidate.references <= 0) {
+                candidates.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Returns every candidate starting with the given prefix, ignoring case, in sorted order.
+     */
+    public List<String> complete(String prefix) {
+        return complete(prefix, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns at most {@code limit} candidates starting with the given prefix, ignoring case, in sorted order.
+     */
+    public synchronized List<String> complete(String prefix, int limit) {
+        String from = keyOf(prefix);
+        Map<String, Candidate> matches = candidates.subMap(from, true, from + Character.MAX_VALUE, false);
+
+        // the size of a sub-map is only known by walking it, so size the result by the limit alone
+        List<String> result = new ArrayList<>(Math.min(limit, 16));
+        for (Candidate candidate : matches.values()) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(candidate.value);
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return candidates.size();
+    }
+
+    private static String keyOf(String value) {
+        return value.toLowerCase(Locale.ENGLISH);
+    }
+}
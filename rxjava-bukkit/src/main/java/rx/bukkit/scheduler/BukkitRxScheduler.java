@@ -1,7 +1,6 @@
 package rx.bukkit.scheduler;
 
 import org.bukkit.plugin.Plugin;
-import org.bukkit.scheduler.BukkitScheduler;
 import rx.Scheduler;
 import rx.Subscription;
 import rx.functions.Action0;
@@ -20,23 +19,53 @@ public class BukkitRxScheduler extends Scheduler implements Executor {
 
     private final Plugin plugin;
     private final ConcurrencyMode concurrencyMode;
+    private final ShutdownCoordinator coordinator;
 
+    /**
+     * Returns the shared scheduler of the plugin if it is registered with {@link SharedSchedulers}, or a new one.
+     */
     public static BukkitRxScheduler forPlugin(Plugin plugin, ConcurrencyMode concurrencyMode) {
-        return new BukkitRxScheduler(plugin, concurrencyMode);
+        BukkitRxScheduler shared = SharedSchedulers.view(plugin, concurrencyMode);
+        return shared != null ? shared : new BukkitRxScheduler(plugin, concurrencyMode);
     }
 
     public static BukkitRxScheduler forPlugin(Plugin plugin) {
-        return new BukkitRxScheduler(plugin, ConcurrencyMode.SYNCHRONOUS);
+        return forPlugin(plugin, ConcurrencyMode.SYNCHRONOUS);
     }
 
     public BukkitRxScheduler(Plugin plugin, ConcurrencyMode concurrencyMode) {
         this.plugin = plugin;
         this.concurrencyMode = concurrencyMode;
+        this.coordinator = ShutdownCoordinator.forPlugin(plugin);
     }
 
+    /**
+     * Schedules the command for the next tick. Once the plugin has been disabled, see {@link ShutdownCoordinator},
+     * the command is rejected with a {@link java.util.concurrent.RejectedExecutionException}.
+     */
     @Override
     public void execute(Runnable command) {
-        scheduleOnBukkitScheduler(plugin, command, 0, concurrencyMode);
+        coordinator.schedule(command, 0, concurrencyMode);
+    }
+
+    /**
+     * Schedules the command like {@link #execute(Runnable)} and returns the Bukkit task id, so the command can be
+     * withdrawn with {@link #cancel(int)} while it is still queued.
+     */
+    public int executeWithId(Runnable command) {
+        return coordinator.schedule(command, 0, concurrencyMode);
+    }
+
+    /**
+     * Schedules the command after the given number of ticks, like {@link #executeWithId(Runnable)}. Delayed commands
+     * are dropped rather than run when the plugin is drained.
+     */
+    int executeLater(Runnable command, long ticks) {
+        return coordinator.schedule(command, ticks, concurrencyMode);
+    }
+
+    public void cancel(int taskId) {
+        coordinator.cancel(taskId);
     }
 
     @Override
@@ -58,11 +87,11 @@ public class BukkitRxScheduler extends Scheduler implements Executor {
             scheduledAction.addParent(compositeSubscription);
             compositeSubscription.add(scheduledAction);
 
-            final int taskId = BukkitRxScheduler.scheduleOnBukkitScheduler(plugin, scheduledAction, timeUnitToBukkitTicks(delayTime, timeUnit), concurrencyMode);
+            final int taskId = coordinator.schedule(scheduledAction, timeUnitToBukkitTicks(delayTime, timeUnit), concurrencyMode);
             scheduledAction.add(Subscriptions.create(new Action0() {
                 @Override
                 public void call() {
-                    plugin.getServer().getScheduler().cancelTask(taskId);
+                    coordinator.cancel(taskId);
                 }
             }));
 
@@ -83,13 +112,4 @@ public class BukkitRxScheduler extends Scheduler implements Executor {
             return Math.round(timeUnit.toMillis(delayTime) * 0.02);
         }
     }
-
-    private static int scheduleOnBukkitScheduler(Plugin plugin, Runnable command, long ticks, ConcurrencyMode concurrencyMode) {
-        BukkitScheduler scheduler = plugin.getServer().getScheduler();
-        if (concurrencyMode == ConcurrencyMode.SYNCHRONOUS) {
-            return scheduler.scheduleSyncDelayedTask(plugin, command, ticks);
-        } else {
-            return scheduler.scheduleAsyncDelayedTask(plugin, command, ticks);
-        }
-    }
 }
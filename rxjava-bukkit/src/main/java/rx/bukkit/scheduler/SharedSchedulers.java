@@ -0,0 +1,254 @@
+package rx.bukkit.scheduler;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.Plugin;
+import rx.Scheduler;
+import rx.bukkit.ErrorReporter;
+import rx.plugins.RxJavaDefaultSchedulers;
+import rx.plugins.RxJavaErrorHandler;
+import rx.plugins.RxJavaPlugins;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Copyright 2014 Ryan Michela
+ *
+ * The registry of the plugins using this copy of the library. The global {@link RxJavaPlugins} hooks can only be set
+ * once per copy of RxJava, so they are installed once, by the first plugin to register, and route every call to the
+ * plugin it comes from: the innermost class on the call stack that was loaded by the class loader of a registered
+ * plugin. A worker of the global schedulers, e.g. the one behind an {@code Observable.interval}, is a worker of the
+ * shared scheduler of the plugin that subscribed, so its work runs as a task of that plugin and is drained or dropped
+ * with it on disable. Errors reported to the global error handler are logged by the plugin whose code raised them.
+ * <p>
+ * Calls that cannot be traced to a plugin, e.g. because a plugin shades its own copy of the library into its class
+ * loader, go to the owner instead: the first registered plugin that is still enabled.
+ * <p>
+ * Every registered plugin also gets one shared synchronous and asynchronous {@link BukkitRxScheduler}, returned by
+ * {@link BukkitRxScheduler#forPlugin}, instead of a new instance per call. A plugin is dropped from the registry
+ * when it is disabled.
+ * <p>
+ * The registry is server-wide only if the library, with RxJava, is loaded once, e.g. as a plugin of its own; a plugin
+ * shading its own copy of both gets a registry, and global hooks, of its own.
+ */
+public final class SharedSchedulers {
+    private static final Map<Plugin, BukkitRxScheduler[]> views = new ConcurrentHashMap<>();
+    private static final Scheduler computation = new RoutingScheduler(BukkitRxScheduler.ConcurrencyMode.SYNCHRONOUS);
+    private static final Scheduler io = new RoutingScheduler(BukkitRxScheduler.ConcurrencyMode.ASYNCHRONOUS);
+
+    // the registered plugin that loaded each class seen on a call stack, or NONE, replaced when the registry changes
+    private static volatile Map<String, Object> loaders = new ConcurrentHashMap<>();
+    private static final Object NONE = new Object();
+
+    // guarded by the class lock
+    private static final List<Plugin> registered = new ArrayList<>();
+    private static final Set<Plugin> watched = new HashSet<>();
+    private static boolean installed;
+
+    private static volatile Plugin owner;
+
+    private SharedSchedulers() {
+    }
+
+    /**
+     * Registers a plugin, installing the global RxJava hooks if it is the first one. Bukkit only accepts listeners of
+     * enabled plugins, so the plugin is only dropped on disable automatically if it is registered, again, once enabled;
+     * otherwise it has to call {@link #unregister} from {@code onDisable}.
+     */
+    public static synchronized void register(final Plugin plugin) {
+        if (!views.containsKey(plugin)) {
+            views.put(plugin, new BukkitRxScheduler[] {
+                    new BukkitRxScheduler(plugin, BukkitRxScheduler.ConcurrencyMode.SYNCHRONOUS),
+                    new BukkitRxScheduler(plugin, BukkitRxScheduler.ConcurrencyMode.ASYNCHRONOUS)
+            });
+            registered.add(plugin);
+            owner = null;
+            loaders = new ConcurrentHashMap<>();
+
+            if (!installed) {
+                installed = true;
+                install(plugin);
+            }
+        }
+
+        if (plugin.isEnabled() && watched.add(plugin)) {
+            EventExecutor disableExecutor = new EventExecutor() {
+                @Override
+                public void execute(Listener listener, Event event) throws EventException {
+                    if (((PluginDisableEvent) event).getPlugin() == plugin) {
+                        unregister(plugin);
+                    }
+                }
+            };
+            plugin.getServer().getPluginManager().registerEvent(PluginDisableEvent.class, new Listener() {}, EventPriority.MONITOR, disableExecutor, plugin, false);
+        }
+    }
+
+    /**
+     * Drops a plugin from the registry. The work it has pending on the global schedulers stays with it, to be drained
+     * or dropped by its {@link ShutdownCoordinator}.
+     */
+    public static synchronized void unregister(Plugin plugin) {
+        if (views.remove(plugin) == null) {
+            return;
+        }
+
+        registered.remove(plugin);
+        watched.remove(plugin);
+        owner = null;
+        loaders = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the plugin calls go to when they cannot be traced to a plugin: the first registered plugin that is
+     * enabled, or while plugins are still loading, the first registered one. Returns null if no plugin is registered.
+     */
+    public static Plugin getOwner() {
+        Plugin current = owner;
+        return current != null && current.isEnabled() ? current : electOwner();
+    }
+
+    private static synchronized Plugin electOwner() {
+        Plugin elected = registered.isEmpty() ? null : registered.get(0);
+        for (Plugin plugin : registered) {
+            if (plugin.isEnabled()) {
+                elected = plugin;
+                break;
+            }
+        }
+        owner = elected != null && elected.isEnabled() ? elected : null;
+        return elected;
+    }
+
+    /**
+     * Returns the shared scheduler of a registered plugin, or null if the plugin is not registered.
+     */
+    public static BukkitRxScheduler view(Plugin plugin, BukkitRxScheduler.ConcurrencyMode concurrencyMode) {
+        BukkitRxScheduler[] schedulers = views.get(plugin);
+        return schedulers == null ? null : schedulers[concurrencyMode.ordinal()];
+    }
+
+    /**
+     * Returns the registered plugin that loaded the innermost class of the stack, skipping the classes of this copy of
+     * the library and RxJava, or null if there is none.
+     */
+    private static Plugin pluginOf(StackTraceElement[] stack) {
+        Map<String, Object> cache = loaders;
+        for (StackTraceElement frame : stack) {
+            String className = frame.getClassName();
+            Object plugin = cache.get(className);
+            if (plugin == null) {
+                plugin = loadingPlugin(className);
+                cache.put(className, plugin);
+            }
+            if (plugin != NONE && views.containsKey(plugin)) {
+                return (Plugin) plugin;
+            }
+        }
+        return null;
+    }
+
+    private static Object loadingPlugin(String className) {
+        if (isLoadedBy(className, SharedSchedulers.class.getClassLoader())) {
+            return NONE;
+        }
+
+        List<Plugin> candidates;
+        synchronized (SharedSchedulers.class) {
+            candidates = new ArrayList<>(registered);
+        }
+
+        // outside of the class lock, as loading may take the locks of the class loaders
+        for (Plugin plugin : candidates) {
+            if (isLoadedBy(className, plugin.getClass().getClassLoader())) {
+                return plugin;
+            }
+        }
+        return NONE;
+    }
+
+    private static boolean isLoadedBy(String className, ClassLoader classLoader) {
+        try {
+            return Class.forName(className, false, classLoader).getClassLoader() == classLoader;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static void install(Plugin plugin) {
+        try {
+            RxJavaPlugins.getInstance().registerErrorHandler(new RxJavaErrorHandler() {
+                @Override
+                public void handleError(Throwable e) {
+                    Plugin current = pluginOf(e.getStackTrace());
+                    if (current == null) {
+                        current = pluginOf(new Throwable().getStackTrace());
+                    }
+                    if (current == null) {
+                        current = getOwner();
+                    }
+                    Logger logger = current != null ? current.getLogger() : Logger.getLogger(SharedSchedulers.class.getName());
+                    ErrorReporter.getInstance().report(logger, "Unhandled exception in observable", e);
+                }
+            });
+        } catch (IllegalStateException e) {
+            plugin.getLogger().warning("Another RxJava error handler is already registered");
+        }
+
+        try {
+            RxJavaPlugins.getInstance().registerDefaultSchedulers(new RxJavaDefaultSchedulers() {
+                @Override
+                public Scheduler getComputationScheduler() {
+                    return computation;
+                }
+
+                @Override
+                public Scheduler getIOScheduler() {
+                    return io;
+                }
+
+                @Override
+                public Scheduler getNewThreadScheduler() {
+                    return io;
+                }
+            });
+        } catch (IllegalStateException e) {
+            plugin.getLogger().warning("Other RxJava default schedulers are already registered");
+        }
+    }
+
+    /**
+     * A global scheduler whose workers are workers of the shared scheduler of the plugin creating them.
+     */
+    private static class RoutingScheduler extends Scheduler {
+        private final BukkitRxScheduler.ConcurrencyMode concurrencyMode;
+
+        private RoutingScheduler(BukkitRxScheduler.ConcurrencyMode concurrencyMode) {
+            this.concurrencyMode = concurrencyMode;
+        }
+
+        @Override
+        public Worker createWorker() {
+            // once per subscription rather than per action, so the stack walk stays off the hot path
+            Plugin plugin = pluginOf(new Throwable().getStackTrace());
+            if (plugin == null) {
+                plugin = getOwner();
+            }
+            BukkitRxScheduler scheduler = plugin == null ? null : view(plugin, concurrencyMode);
+            if (scheduler == null) {
+                throw new IllegalStateException("No plugin using RxJava is enabled");
+            }
+            return scheduler.createWorker();
+        }
+    }
+}
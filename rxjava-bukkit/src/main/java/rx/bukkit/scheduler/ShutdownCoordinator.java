@@ -0,0 +1,366 @@
+package rx.bukkit.scheduler;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import rx.Subscription;
+import rx.bukkit.ErrorReporter;
+import rx.bukkit.RxJavaPlugin;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * Copyright 2014 Ryan Michela
+ *
+ * Tracks the work a plugin has queued through its {@link BukkitRxScheduler}s, so that it can be drained when the plugin
+ * is disabled instead of being dropped by Bukkit or run against a disabled plugin. {@link #drain} runs the queued
+ * work on the calling thread and waits for running async work until the deadline; work submitted meanwhile, e.g. the
+ * continuations of a save, is run as well. Delayed work, such as timers and intervals, is not run early but dropped;
+ * dropped commands that are {@link Subscription}s, such as the actions of workers, are unsubscribed.
+ * Whatever is left at the deadline is cancelled and reported, and afterwards the schedulers reject new work.
+ * <p>
+ * An {@link RxJavaPlugin} drains in {@code onDisable}. Any other plugin is drained when its
+ * {@link PluginDisableEvent} is called, which Bukkit does right before {@code onDisable}, and its exceptions are
+ * flushed with the {@link ErrorReporter}. The coordinators are only weakly held, by plugin, so a plugin that is never
+ * drained is not kept from being unloaded.
+ */
+public class ShutdownCoordinator {
+    // guarded by itself; the schedulers of a plugin and its queued work keep its coordinator alive
+    private static final Map<Plugin, WeakReference<ShutdownCoordinator>> coordinators = new WeakHashMap<>();
+
+    /**
+     * Orders commands by submission: Bukkit hands out ascending task ids, and the negative ids of commands queued
+     * while draining count down from -1 after them.
+     */
+    private static final Comparator<Pending> BY_SUBMISSION = new Comparator<Pending>() {
+        @Override
+        public int compare(Pending a, Pending b) {
+            if ((a.taskId > 0) != (b.taskId > 0)) {
+                return a.taskId > 0 ? -1 : 1;
+            }
+            return a.taskId > 0 ? Integer.compare(a.taskId, b.taskId) : Integer.compare(b.taskId, a.taskId);
+        }
+    };
+
+    private static final int OPEN = 0;
+    private static final int DRAINING = 1;
+    private static final int CLOSED = 2;
+
+    private final Plugin plugin;
+    // the queued and running commands by task id, the only bookkeeping on the scheduling path
+    private final ConcurrentMap<Integer, Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger localIds = new AtomicInteger();
+    private volatile int phase = OPEN;
+    private volatile long deadlineMillis = 3000;
+    private volatile boolean hooked;
+
+    /**
+     * A queued command. Whoever moves it out of {@code QUEUED} first, Bukkit running it, the drain running it or a
+     * cancellation, decides its fate.
+     */
+    private class Pending extends AtomicInteger implements Runnable {
+        static final int QUEUED = 0;
+        static final int RUNNING = 1;
+        static final int DONE = 2;
+        static final int CANCELLED = 3;
+
+        private final Runnable command;
+        private final boolean delayed;
+        private volatile int taskId;
+
+        private Pending(Runnable command, boolean delayed) {
+            this.command = command;
+            this.delayed = delayed;
+        }
+
+        @Override
+        public void run() {
+            if (!compareAndSet(QUEUED, RUNNING)) {
+                return;
+            }
+            try {
+                command.run();
+            } finally {
+                set(DONE);
+                forget(this);
+            }
+        }
+
+        private boolean cancel() {
+            if (compareAndSet(QUEUED, CANCELLED)) {
+                forget(this);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return command.toString();
+        }
+    }
+
+    /**
+     * The outcome of a drain.
+     */
+    public static final class Report {
+        private final int completed;
+        private final List<String> dropped;
+        private final int stillRunning;
+
+        private Report(int completed, List<String> dropped, int stillRunning) {
+            this.completed = completed;
+            this.dropped = Collections.unmodifiableList(dropped);
+            this.stillRunning = stillRunning;
+        }
+
+        /** The number of commands run by the drain. */
+        public int getCompleted() {
+            return completed;
+        }
+
+        /** The commands that were cancelled, either because they were delayed or because the deadline passed. */
+        public List<String> getDropped() {
+            return dropped;
+        }
+
+        /** The number of async commands still running at the deadline. */
+        public int getStillRunning() {
+            return stillRunning;
+        }
+
+        /** Whether nothing was lost. */
+        public boolean isClean() {
+            return dropped.isEmpty() && stillRunning == 0;
+        }
+
+        @Override
+        public String toString() {
+            return "completed=" + completed + " dropped=" + dropped.size() + " stillRunning=" + stillRunning;
+        }
+    }
+
+    private ShutdownCoordinator(Plugin plugin) {
+        this.plugin = plugin;
+        // an RxJavaPlugin drains in onDisable, after queuing its final work
+        this.hooked = plugin instanceof RxJavaPlugin;
+    }
+
+    /**
+     * Returns the coordinator of the plugin.
+     */
+    public static ShutdownCoordinator forPlugin(Plugin plugin) {
+        synchronized (coordinators) {
+            WeakReference<ShutdownCoordinator> reference = coordinators.get(plugin);
+            ShutdownCoordinator coordinator = reference == null ? null : reference.get();
+            // plugins are equal by name, so a reloaded plugin finds the entry of its predecessor
+            if (coordinator == null || coordinator.plugin != plugin) {
+                coordinator = new ShutdownCoordinator(plugin);
+                coordinators.remove(plugin);
+                coordinators.put(plugin, new WeakReference<>(coordinator));
+            }
+            return coordinator;
+        }
+    }
+
+    /**
+     * Sets how long {@link #drain()} may take. Defaults to three seconds.
+     */
+    public void setDeadline(long timeout, TimeUnit unit) {
+        deadlineMillis = unit.toMillis(timeout);
+    }
+
+    /**
+     * Returns the number of queued or running commands.
+     */
+    public int getPending() {
+        return pending.size();
+    }
+
+    int schedule(Runnable command, long ticks, BukkitRxScheduler.ConcurrencyMode concurrencyMode) {
+        if (phase == CLOSED) {
+            throw new RejectedExecutionException("The plugin " + plugin.getName() + " has been disabled");
+        }
+
+        if (!hooked) {
+            hook();
+        }
+
+        Pending work = new Pending(command, ticks > 0);
+
+        if (phase == DRAINING) {
+            // a disabled plugin may not schedule Bukkit tasks, the drain runs it
+            work.taskId = -localIds.incrementAndGet();
+            pending.put(work.taskId, work);
+            return work.taskId;
+        }
+
+        BukkitScheduler scheduler = plugin.getServer().getScheduler();
+        int taskId = concurrencyMode == BukkitRxScheduler.ConcurrencyMode.SYNCHRONOUS
+                ? scheduler.scheduleSyncDelayedTask(plugin, work, ticks)
+                : scheduler.scheduleAsyncDelayedTask(plugin, work, ticks);
+
+        work.taskId = taskId;
+        pending.put(taskId, work);
+        if (work.get() >= Pending.DONE) {
+            // it ran, or was cancelled, before it was tracked
+            pending.remove(taskId, work);
+        }
+        return taskId;
+    }
+
+    /**
+     * Drains the plugin when it is disabled. Bukkit only accepts listeners of enabled plugins, which a plugin
+     * scheduling work is.
+     */
+    private synchronized void hook() {
+        if (hooked || !plugin.isEnabled()) {
+            return;
+        }
+        hooked = true;
+
+        EventExecutor disableExecutor = new EventExecutor() {
+            @Override
+            public void execute(Listener listener, Event event) throws EventException {
+                if (((PluginDisableEvent) event).getPlugin() == plugin) {
+                    drain();
+                    ErrorReporter.getInstance().flush(plugin.getLogger());
+                }
+            }
+        };
+        plugin.getServer().getPluginManager().registerEvent(PluginDisableEvent.class, new Listener() {}, EventPriority.MONITOR, disableExecutor, plugin, false);
+    }
+
+    void cancel(int taskId) {
+        Pending work = pending.get(taskId);
+        if (work != null) {
+            work.cancel();
+        }
+        if (taskId > 0) {
+            plugin.getServer().getScheduler().cancelTask(taskId);
+        }
+    }
+
+    private void forget(Pending work) {
+        int taskId = work.taskId;
+        if (taskId != 0) {
+            pending.remove(taskId, work);
+        }
+    }
+
+    /**
+     * Drains the pending work within the configured deadline, see {@link #setDeadline}.
+     */
+    public Report drain() {
+        return drain(deadlineMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Drains the pending work within the given deadline and logs what had to be dropped. Call it from the main thread
+     * in {@code onDisable}; {@link rx.bukkit.RxJavaPlugin} does so by itself.
+     */
+    public Report drain(long timeout, TimeUnit unit) {
+        if (phase == CLOSED) {
+            return new Report(0, new ArrayList<String>(), 0);
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        List<String> dropped = new ArrayList<>();
+        int completed = 0;
+
+        phase = DRAINING;
+
+        while (true) {
+            boolean ran = false;
+            for (Pending work : snapshot()) {
+                if (work.delayed) {
+                    if (work.cancel()) {
+                        drop(work, dropped);
+                    }
+                } else if (work.get() == Pending.QUEUED) {
+                    try {
+                        work.run();
+                    } catch (RuntimeException e) {
+                        ErrorReporter.getInstance().report(plugin.getLogger(), "Unhandled exception while draining", e);
+                    }
+                    if (work.get() == Pending.DONE) {
+                        completed++;
+                        ran = true;
+                    }
+                }
+            }
+
+            if (pending.isEmpty() || System.nanoTime() - deadline >= 0) {
+                break;
+            }
+            if (!ran) {
+                // only async work that is running is left
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+
+        phase = CLOSED;
+        synchronized (coordinators) {
+            WeakReference<ShutdownCoordinator> reference = coordinators.get(plugin);
+            if (reference != null && reference.get() == this) {
+                coordinators.remove(plugin);
+            }
+        }
+
+        int stillRunning = 0;
+        for (Pending work : snapshot()) {
+            if (work.cancel()) {
+                drop(work, dropped);
+            } else if (work.get() == Pending.RUNNING) {
+                stillRunning++;
+            }
+        }
+
+        Report report = new Report(completed, dropped, stillRunning);
+        if (!report.isClean()) {
+            plugin.getLogger().log(Level.WARNING, "Shutdown drain incomplete (" + report + "), dropped: " + dropped);
+        }
+        return report;
+    }
+
+    /**
+     * Records a cancelled command and lets it know that it will not run.
+     */
+    private void drop(Pending work, List<String> dropped) {
+        dropped.add(work.toString());
+        if (work.command instanceof Subscription) {
+            try {
+                ((Subscription) work.command).unsubscribe();
+            } catch (RuntimeException e) {
+                ErrorReporter.getInstance().report(plugin.getLogger(), "Unhandled exception while draining", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the pending commands in the order they were submitted.
+     */
+    private List<Pending> snapshot() {
+        List<Pending> snapshot = new ArrayList<>(pending.values());
+        Collections.sort(snapshot, BY_SUBMISSION);
+        return snapshot;
+    }
+}
@@ -0,0 +1,234 @@
+package rx.bukkit.scheduler;
+
+import org.bukkit.plugin.Plugin;
+import rx.Subscription;
+import rx.bukkit.ErrorReporter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Copyright 2014 Ryan Michela
+ *
+ * A hashed timing wheel driven by the server tick. All timers of a plugin share a single main thread task that
+ * advances the wheel once per tick and only keeps rescheduling itself while timers are pending, instead of blocking
+ * a thread or queuing a Bukkit task per timer. Timers may be scheduled from any thread; they fire on the main thread.
+ * <p>
+ * The task is scheduled through the {@link BukkitRxScheduler} of the plugin, so the timer stops with the plugin: once
+ * the task is dropped by the {@link ShutdownCoordinator}, or cannot be scheduled any more, the pending timers are dropped
+ * as well, and those whose action is a {@link Subscription} are unsubscribed.
+ */
+public class TickTimer {
+    private static final int WHEEL_SIZE = 512;
+
+    private final Plugin plugin;
+    private final BukkitRxScheduler scheduler;
+    private final Timeout[] wheel = new Timeout[WHEEL_SIZE];
+    private final Queue<Timeout> inbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // only written on the main thread
+    private volatile long tick;
+    private int pending;
+
+    private static class Timeout implements Subscription {
+        private final Runnable action;
+        private final long deadline;
+        private Timeout next;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable action, long deadline) {
+            this.action = action;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void unsubscribe() {
+            cancelled = true;
+        }
+
+        @Override
+        public boolean isUnsubscribed() {
+            return cancelled;
+        }
+    }
+
+    private final Advance advance = new Advance();
+
+    /**
+     * Advances the wheel by one tick. Unsubscribed when the drain drops it.
+     */
+    private class Advance implements Runnable, Subscription {
+        @Override
+        public void run() {
+            long now = ++tick;
+
+            Timeout timeout;
+            while ((timeout = inbox.poll()) != null) {
+                place(timeout, now);
+            }
+
+            int slot = (int) (now & (WHEEL_SIZE - 1));
+            Timeout due = null;
+            Timeout keep = null;
+            for (Timeout t = wheel[slot]; t != null; ) {
+                Timeout next = t.next;
+                if (t.cancelled) {
+                    pending--;
+                } else if (t.deadline <= now) {
+                    t.next = due;
+                    due = t;
+                    pending--;
+                } else {
+                    t.next = keep;
+                    keep = t;
+                }
+                t = next;
+            }
+            wheel[slot] = keep;
+
+            for (Timeout t = due; t != null; t = t.next) {
+                fire(t);
+            }
+
+            try {
+                if (pending > 0 || !inbox.isEmpty()) {
+                    scheduleAdvance();
+                    return;
+                }
+
+                running.set(false);
+                // a timer scheduled while stopping would otherwise be stranded in the inbox
+                if (!inbox.isEmpty() && running.compareAndSet(false, true)) {
+                    scheduleAdvance();
+                }
+            } catch (RuntimeException e) {
+                // the plugin no longer accepts work
+                stop();
+            }
+        }
+
+        @Override
+        public void unsubscribe() {
+            stop();
+        }
+
+        @Override
+        public boolean isUnsubscribed() {
+            return !running.get();
+        }
+
+        @Override
+        public String toString() {
+            return "TickTimer of " + plugin.getName();
+        }
+    }
+
+    public TickTimer(Plugin plugin) {
+        this.plugin = plugin;
+        this.scheduler = BukkitRxScheduler.forPlugin(plugin);
+    }
+
+    /**
+     * Gets the number of ticks this timer has been running for.
+     */
+    public long currentTick() {
+        return tick;
+    }
+
+    /**
+     * Schedules an action to run on the main thread after the given number of ticks.
+     *
+     * @return the subscription to cancel the timer
+     * @throws java.util.concurrent.RejectedExecutionException if the plugin has been disabled
+     */
+    public Subscription schedule(Runnable action, long ticks) {
+        Timeout timeout = new Timeout(action, tick + Math.max(1, ticks));
+        inbox.add(timeout);
+        if (running.compareAndSet(false, true)) {
+            try {
+                scheduleAdvance();
+            } catch (RuntimeException e) {
+                inbox.remove(timeout);
+                throw e;
+            }
+        }
+        return timeout;
+    }
+
+    public Subscription schedule(Runnable action, long delayTime, TimeUnit timeUnit) {
+        return schedule(action, toTicks(delayTime, timeUnit));
+    }
+
+    /**
+     * Converts a duration to server ticks, rounding up to whole ticks.
+     */
+    public static long toTicks(long delayTime, TimeUnit timeUnit) {
+        return (timeUnit.toMillis(delayTime) + 49) / 50;
+    }
+
+    private void place(Timeout timeout, long now) {
+        if (timeout.cancelled) {
+            return;
+        }
+        pending++;
+        int slot = (int) (Math.max(timeout.deadline, now) & (WHEEL_SIZE - 1));
+        timeout.next = wheel[slot];
+        wheel[slot] = timeout;
+    }
+
+    private void fire(Timeout timeout) {
+        try {
+            timeout.action.run();
+        } catch (Throwable t) {
+            ErrorReporter.getInstance().report(plugin.getLogger(), "Unhandled exception in timer", t);
+        }
+    }
+
+    /**
+     * Schedules the next advance. If that fails the timer is no longer running, so that the next timer scheduled tries
+     * again instead of waiting for an advance that never comes.
+     */
+    private void scheduleAdvance() {
+        try {
+            scheduler.executeLater(advance, 1);
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Drops all pending timers once the advance can no longer run. Called on the main thread.
+     */
+    private void stop() {
+        running.set(false);
+
+        List<Timeout> dropped = new ArrayList<>();
+        for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+            for (Timeout t = wheel[slot]; t != null; t = t.next) {
+                dropped.add(t);
+            }
+            wheel[slot] = null;
+        }
+        Timeout timeout;
+        while ((timeout = inbox.poll()) != null) {
+            dropped.add(timeout);
+        }
+        pending = 0;
+
+        for (Timeout t : dropped) {
+            if (!t.cancelled && t.action instanceof Subscription) {
+                try {
+                    ((Subscription) t.action).unsubscribe();
+                } catch (Throwable e) {
+                    ErrorReporter.getInstance().report(plugin.getLogger(), "Unhandled exception in timer", e);
+                }
+            }
+        }
+    }
+}
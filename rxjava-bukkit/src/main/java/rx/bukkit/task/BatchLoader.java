@@ -0,0 +1,213 @@
+/*
+ *  Copyright (c) 2014 Ryan Michela.
+ *
+ *  Filename: BatchLoader.java
+ */
+package rx.bukkit.task;
+
+import rx.bukkit.RxJavaPlugin;
+import rx.functions.Func1;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * <p> The {@code BatchLoader} collects the keys of individual {@link #load} calls and loads them with a single
+ * call of a batch function, e.g. one {@code SELECT ... WHERE id IN (...)} instead of a query per key. Keys
+ * requested during a tick are flushed together once the main thread gets to the flush queued by the first of
+ * them, or as soon as the maximum batch size is reached. The batch function runs on the executor of the loader.
+ *
+ * <p> Every call of {@code load} gets the {@link Task} of its key; requests for a key that is already waiting
+ * in the current batch share its {@code Task}. A key missing from the map returned by the batch function
+ * completes with {@code null}, and an exception thrown by the batch function faults every {@code Task} of
+ * the batch.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class BatchLoader<K, V>
+{
+    /** The _plugin. */
+    private final RxJavaPlugin _plugin;
+
+    /** The _batch function. */
+    private final Func1<Set<K>, Map<K, V>> _batchFunction;
+
+    /** The _executor the batch function is called on. */
+    private final Executor _executor;
+
+    /** The _max batch size. */
+    private final int _maxBatchSize;
+
+    /** The tasks of the keys of the current batch, guarded by itself. */
+    private Map<K, Task<V>> _pending = new LinkedHashMap<K, Task<V>>();
+
+    /** Whether a flush has been queued on the main thread for the current batch. */
+    private boolean _flushQueued;
+
+    /** Flushes the current batch at the end of the tick. */
+    private final Runnable _flush = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            Map<K, Task<V>> batch;
+
+            synchronized (BatchLoader.this)
+            {
+                _flushQueued = false;
+                batch = take();
+            }
+
+            dispatch(batch);
+        }
+    };
+
+    /**
+     * Creates a {@code BatchLoader}, see {@link TaskFactory#newBatchLoader}.
+     *
+     * @param batchFunction the function loading the values of a set of keys
+     * @param executor the executor to call the batch function on
+     * @param maxBatchSize the number of keys that triggers a flush before the end of the tick
+     */
+    BatchLoader(RxJavaPlugin plugin, Func1<Set<K>, Map<K, V>> batchFunction, Executor executor, int maxBatchSize)
+    {
+        if (batchFunction == null || executor == null)
+        {
+            throw new NullPointerException();
+        }
+
+        if (maxBatchSize < 1)
+        {
+            throw new IllegalArgumentException("The maxBatchSize argument must be at least 1.");
+        }
+
+        _plugin = plugin;
+        _batchFunction = batchFunction;
+        _executor = executor;
+        _maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Requests the value of a key with the next batch.
+     *
+     * @param key the key
+     * @return the task
+     */
+    public Task<V> load(K key)
+    {
+        Task<V> task;
+        Map<K, Task<V>> full = null;
+        boolean queueFlush = false;
+
+        synchronized (this)
+        {
+            task = _pending.get(key);
+
+            if (task != null)
+            {
+                return task;
+            }
+
+            task = new Task<V>(_plugin, _plugin.getTaskFactory().defaultExecutor, "");
+            _pending.put(key, task);
+
+            if (_pending.size() >= _maxBatchSize)
+            {
+                full = take();
+            }
+            else if (!_flushQueued)
+            {
+                _flushQueued = true;
+                queueFlush = true;
+            }
+        }
+
+        if (full != null)
+        {
+            dispatch(full);
+        }
+        else if (queueFlush)
+        {
+            _plugin.getTaskFactory().defaultExecutor.execute(_flush);
+        }
+
+        return task;
+    }
+
+    /**
+     * Sends the current batch right away instead of waiting for the end of the tick.
+     */
+    public void flush()
+    {
+        Map<K, Task<V>> batch;
+
+        synchronized (this)
+        {
+            batch = take();
+        }
+
+        dispatch(batch);
+    }
+
+    /**
+     * Takes the current batch and starts a new one. Must be called holding the lock.
+     *
+     * @return the current batch
+     */
+    private Map<K, Task<V>> take()
+    {
+        Map<K, Task<V>> batch = _pending;
+
+        if (!batch.isEmpty())
+        {
+            _pending = new LinkedHashMap<K, Task<V>>();
+        }
+
+        return batch;
+    }
+
+    /**
+     * Calls the batch function with the keys of the batch on the executor and completes their tasks.
+     *
+     * @param batch the batch
+     */
+    private void dispatch(final Map<K, Task<V>> batch)
+    {
+        if (batch.isEmpty())
+        {
+            return;
+        }
+
+        _executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Map<K, V> values;
+
+                try
+                {
+                    values = _batchFunction.call(Collections.unmodifiableSet(batch.keySet()));
+                }
+                catch (Throwable t)
+                {
+                    for (Task<V> task : batch.values())
+                    {
+                        task.setException(t);
+                    }
+
+                    return;
+                }
+
+                for (Map.Entry<K, Task<V>> entry : batch.entrySet())
+                {
+                    entry.getValue().set(values != null ? values.get(entry.getKey()) : null);
+                }
+            }
+        });
+    }
+}
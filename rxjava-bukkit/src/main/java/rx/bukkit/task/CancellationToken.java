@@ -0,0 +1,269 @@
+/*
+ *  Copyright (c) 2014 Ryan Michela.
+ *  
+ *  Filename: CancellationToken.java
+ */
+package rx.bukkit.task;
+
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.subscriptions.Subscriptions;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * The {@code CancellationToken} is the consumer side of a {@link CancellationTokenSource}. It is passed to
+ * {@link TaskFactory#startNew(java.util.concurrent.Callable, CancellationToken)} and
+ * {@link Task#continueWith(TaskFunc, CancellationToken)} to cancel a chain of {@link Task}s at once.
+ *
+ * <p> Registrations are kept in a lock-free stack. Unregistering flags the registration; flagged registrations
+ * on top are dropped by the next registration, and once flagged ones make up more than half of the stack,
+ * a sweep unlinks them wherever they are, so register and unregister churn on a long-lived token does not
+ * grow the stack.
+ */
+public class CancellationToken
+{
+    /** The updater of the state word. */
+    private static final AtomicReferenceFieldUpdater<CancellationToken, Object> STATE =
+            AtomicReferenceFieldUpdater.newUpdater(CancellationToken.class, Object.class, "_state");
+
+    /** The updater of the number of registrations in the stack. */
+    private static final AtomicIntegerFieldUpdater<CancellationToken> REGISTERED =
+            AtomicIntegerFieldUpdater.newUpdater(CancellationToken.class, "_registered");
+
+    /** The updater of the number of flagged registrations in the stack. */
+    private static final AtomicIntegerFieldUpdater<CancellationToken> DISPOSED =
+            AtomicIntegerFieldUpdater.newUpdater(CancellationToken.class, "_disposedCount");
+
+    /** The updater of the sweep flag. */
+    private static final AtomicIntegerFieldUpdater<CancellationToken> SWEEPING =
+            AtomicIntegerFieldUpdater.newUpdater(CancellationToken.class, "_sweeping");
+
+    /** The state word of a cancelled token. */
+    private static final Object CANCELLED = new Object();
+
+    /** The state word: the stack of registrations, or {@link #CANCELLED}. */
+    private volatile Object _state;
+
+    /** The number of registrations in the stack, recounted by every sweep. */
+    private volatile int _registered;
+
+    /** The number of flagged registrations in the stack, recounted by every sweep. */
+    private volatile int _disposedCount;
+
+    /** Whether a sweep is running; 1 if so. */
+    private volatile int _sweeping;
+
+    /**
+     * A registered callback.
+     */
+    private static final class Registration implements Subscription
+    {
+        private static final AtomicIntegerFieldUpdater<Registration> DISPOSE =
+                AtomicIntegerFieldUpdater.newUpdater(Registration.class, "_disposed");
+
+        private final CancellationToken _token;
+        private final Action0 _action;
+
+        /** The next registration; only ever changed by a sweep, to skip flagged ones. */
+        private volatile Registration _next;
+        private volatile int _disposed;
+
+        Registration(CancellationToken token, Action0 action, Registration next)
+        {
+            _token = token;
+            _action = action;
+            _next = next;
+        }
+
+        @Override
+        public void unsubscribe()
+        {
+            if (DISPOSE.compareAndSet(this, 0, 1) && _token != null)
+            {
+                _token.disposed();
+            }
+        }
+
+        @Override
+        public boolean isUnsubscribed()
+        {
+            return _disposed != 0;
+        }
+    }
+
+    CancellationToken()
+    {
+    }
+
+    /**
+     * Checks if cancellation has been requested.
+     *
+     * @return true, if cancellation has been requested
+     */
+    public boolean isCancellationRequested()
+    {
+        return _state == CANCELLED;
+    }
+
+    /**
+     * Throws a {@link CancellationException} if cancellation has been requested.
+     */
+    public void throwIfCancellationRequested()
+    {
+        if (isCancellationRequested())
+        {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * Registers a callback that is called when cancellation is requested. The callback is called
+     * immediately if cancellation has already been requested.
+     *
+     * @param action the callback
+     * @return the subscription to unregister the callback
+     */
+    public Subscription register(Action0 action)
+    {
+        Object state;
+        Registration registration;
+
+        do
+        {
+            state = _state;
+
+            if (state == CANCELLED)
+            {
+                action.call();
+                return Subscriptions.empty();
+            }
+
+            Registration top = (Registration) state;
+
+            while (top != null && top._disposed != 0)
+            {
+                top = top._next;
+            }
+
+            registration = new Registration(this, action, top);
+        }
+        while (!STATE.compareAndSet(this, state, registration));
+
+        REGISTERED.incrementAndGet(this);
+
+        return registration;
+    }
+
+    /**
+     * Counts a flagged registration and sweeps the stack once more than half of it is flagged.
+     */
+    private void disposed()
+    {
+        if (DISPOSED.incrementAndGet(this) * 2 > _registered)
+        {
+            sweep();
+        }
+    }
+
+    /**
+     * Unlinks the flagged registrations below the top of the stack and recounts it. The top is left to the
+     * next registration, as it can only be replaced by a compare-and-set of the state word. Registrations
+     * pushed meanwhile are not touched, as they sit above the top the sweep started from, and concurrent
+     * sweeps are skipped.
+     */
+    private void sweep()
+    {
+        if (!SWEEPING.compareAndSet(this, 0, 1))
+        {
+            return;
+        }
+
+        try
+        {
+            Object state = _state;
+
+            if (state == CANCELLED || state == null)
+            {
+                return;
+            }
+
+            Registration live = (Registration) state;
+            int registered = 1;
+            int disposed = live._disposed;
+
+            for (Registration r = live._next; r != null; r = r._next)
+            {
+                if (r._disposed == 0)
+                {
+                    live._next = r;
+                    live = r;
+                    registered++;
+                }
+            }
+
+            live._next = null;
+            _registered = registered;
+            _disposedCount = disposed;
+        }
+        finally
+        {
+            _sweeping = 0;
+        }
+    }
+
+    /**
+     * Counts the registrations in the stack, flagged or not.
+     *
+     * @return the number of registrations, 0 once cancelled
+     */
+    int size()
+    {
+        Object state = _state;
+        int size = 0;
+
+        if (state != CANCELLED)
+        {
+            for (Registration r = (Registration) state; r != null; r = r._next)
+            {
+                size++;
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Requests cancellation and calls the registered callbacks in registration order.
+     *
+     * @return true, if this call requested the cancellation
+     */
+    boolean cancel()
+    {
+        Object state = STATE.getAndSet(this, CANCELLED);
+
+        if (state == CANCELLED)
+        {
+            return false;
+        }
+
+        Registration reversed = null;
+
+        for (Registration r = (Registration) state; r != null; r = r._next)
+        {
+            if (r._disposed == 0)
+            {
+                reversed = new Registration(null, r._action, reversed);
+            }
+        }
+
+        for (Registration r = reversed; r != null; r = r._next)
+        {
+            r._action.call();
+        }
+
+        return true;
+    }
+}
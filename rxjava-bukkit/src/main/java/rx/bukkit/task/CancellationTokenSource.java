@@ -0,0 +1,44 @@
+/*
+ *  Copyright (c) 2014 Ryan Michela.
+ *  
+ *  Filename: CancellationTokenSource.java
+ */
+package rx.bukkit.task;
+
+/**
+ * The {@code CancellationTokenSource} represents the producer side of a {@link CancellationToken}.
+ */
+public class CancellationTokenSource
+{
+    /** The _token. */
+    private final CancellationToken _token = new CancellationToken();
+
+    /**
+     * Gets the token controlled by this source.
+     *
+     * @return the token
+     */
+    public CancellationToken getToken()
+    {
+        return _token;
+    }
+
+    /**
+     * Checks if cancellation has been requested.
+     *
+     * @return true, if cancellation has been requested
+     */
+    public boolean isCancellationRequested()
+    {
+        return _token.isCancellationRequested();
+    }
+
+    /**
+     * Requests cancellation. The tasks started with the token are cancelled and withdrawn from the
+     * Bukkit scheduler if they are still queued; continuations with the token will not start.
+     */
+    public void cancel()
+    {
+        _token.cancel();
+    }
+}
@@ -0,0 +1,20 @@
+/*
+ *  Copyright (c) 2014 Ryan Michela.
+ *
+ *  Filename: IndexAction.java
+ */
+package rx.bukkit.task;
+
+/**
+ * The {@code IndexAction} defines the callback of {@link TaskFactory#parallelFor(int, int, IndexAction)}, which
+ * takes the index as a primitive so that the loop does not box every index.
+ */
+public interface IndexAction {
+
+    /**
+     * Processes an index of the range.
+     *
+     * @param index the index
+     */
+    void call(int index);
+}
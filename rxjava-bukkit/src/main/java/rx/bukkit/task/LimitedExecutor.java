@@ -0,0 +1,194 @@
+/*
+ *  Copyright (c) 2014 Ryan Michela.
+ *
+ *  Filename: LimitedExecutor.java
+ */
+package rx.bukkit.task;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p> The {@code LimitedExecutor} caps the number of runnables of a named resource, e.g. a database, that are
+ * running on the underlying executor at the same time. Runnables beyond the limit wait in a queue without
+ * holding a thread and are handed to the underlying executor in the order they were submitted, each as soon as
+ * a running one has finished.
+ *
+ * <p> Instances are shared by name through {@link TaskFactory#getLimitedExecutor}, so every {@link Task} using
+ * the same resource counts against the same limit.
+ */
+public class LimitedExecutor implements Executor
+{
+    /** The _name of the resource. */
+    private final String _name;
+
+    /** The _delegate executor. */
+    private final Executor _delegate;
+
+    /** The _queue of runnables waiting for a slot. */
+    private final Queue<Runnable> _queue = new ConcurrentLinkedQueue<Runnable>();
+
+    /** The number of runnables handed to the delegate and not yet finished. */
+    private final AtomicInteger _active = new AtomicInteger();
+
+    /** The _limit. */
+    private volatile int _limit;
+
+    /**
+     * Creates a {@code LimitedExecutor}.
+     *
+     * @param name the name of the resource
+     * @param delegate the executor to run the runnables on
+     * @param limit the maximum number of runnables running at the same time
+     */
+    LimitedExecutor(String name, Executor delegate, int limit)
+    {
+        if (delegate == null)
+        {
+            throw new IllegalArgumentException("The delegate argument cannot be null.");
+        }
+
+        _name = name;
+        _delegate = delegate;
+        setLimit(limit);
+    }
+
+    /**
+     * Gets the name of the resource.
+     *
+     * @return the name
+     */
+    public String getName()
+    {
+        return _name;
+    }
+
+    /**
+     * Gets the maximum number of runnables running at the same time.
+     *
+     * @return the limit
+     */
+    public int getLimit()
+    {
+        return _limit;
+    }
+
+    /**
+     * Sets the maximum number of runnables running at the same time. Raising the limit starts waiting runnables
+     * right away; lowering it lets running ones finish.
+     *
+     * @param limit the limit
+     */
+    public void setLimit(int limit)
+    {
+        if (limit < 1)
+        {
+            throw new IllegalArgumentException("The limit argument must be at least 1.");
+        }
+
+        _limit = limit;
+        drain();
+    }
+
+    /**
+     * Gets the number of runnables running or handed to the underlying executor.
+     *
+     * @return the count
+     */
+    public int getActive()
+    {
+        return _active.get();
+    }
+
+    /**
+     * Gets the number of runnables waiting for a slot.
+     *
+     * @return the count
+     */
+    public int getQueued()
+    {
+        return _queue.size();
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.Executor#execute(java.lang.Runnable)
+     */
+    @Override
+    public void execute(Runnable command)
+    {
+        if (command == null)
+        {
+            throw new NullPointerException();
+        }
+
+        _queue.offer(command);
+        drain();
+    }
+
+    /**
+     * Hands waiting runnables to the underlying executor while slots are free. Called after every submission
+     * and every completion, so a runnable is never left waiting while a slot is free.
+     */
+    private void drain()
+    {
+        while (!_queue.isEmpty())
+        {
+            int active = _active.get();
+
+            if (active >= _limit)
+            {
+                return;
+            }
+
+            if (!_active.compareAndSet(active, active + 1))
+            {
+                continue;
+            }
+
+            final Runnable command = _queue.poll();
+
+            if (command == null)
+            {
+                // another thread took the runnable meanwhile
+                _active.decrementAndGet();
+                continue;
+            }
+
+            try
+            {
+                _delegate.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            command.run();
+                        }
+                        finally
+                        {
+                            _active.decrementAndGet();
+                            drain();
+                        }
+                    }
+                });
+            }
+            catch (RuntimeException e)
+            {
+                _active.decrementAndGet();
+                throw e;
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "LimitedExecutor [" + _name + ": active=" + getActive() + "/" + _limit + ", queued=" + getQueued() + "]";
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ *  Copyright (c) 2014 Ryan Michela.
+ *
+ *  Filename: ParallelLoop.java
+ */
+package rx.bukkit.task;
+
+import rx.bukkit.RxJavaPlugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p> A loop over an index range that is split into chunks and run by a fixed number of workers on the
+ * background executor. Workers claim chunks from a shared cursor, so a worker that finishes early simply
+ * claims the next chunk instead of waiting for a slower one; chunks shrink as the range runs out, which keeps
+ * the number of claims low while still balancing the tail of the loop.
+ *
+ * <p> The partial result of every chunk is merged in index order by the last worker, and the merged result
+ * completes the {@code Task} of the loop on the main executor. The first exception stops all workers and
+ * faults the {@code Task}; cancelling the {@code Task} stops all workers at their next chunk.
+ *
+ * @param <R> the result type of the loop
+ */
+abstract class ParallelLoop<R> implements Runnable
+{
+    /** The smallest chunk claimed, unless less is left. */
+    private static final int MIN_CHUNK = 16;
+
+    /** Orders partial results by the start of their chunk. */
+    private static final Comparator<Partial> BY_START = new Comparator<Partial>()
+    {
+        @Override
+        public int compare(Partial a, Partial b)
+        {
+            return a.start < b.start ? -1 : a.start == b.start ? 0 : 1;
+        }
+    };
+
+    /**
+     * The partial result of a chunk.
+     */
+    private static final class Partial
+    {
+        final int start;
+        final Object value;
+
+        Partial(int start, Object value)
+        {
+            this.start = start;
+            this.value = value;
+        }
+    }
+
+    /** The _task completed with the merged result. */
+    private final Task<R> _task;
+
+    /** The _main executor the task is completed on. */
+    private final Executor _mainExecutor;
+
+    /** The _size of the index range. */
+    private final int _size;
+
+    /** The _workers. */
+    private final int _workers;
+
+    /** The next index to be claimed. */
+    private final AtomicInteger _cursor = new AtomicInteger();
+
+    /** The number of workers still running. */
+    private final AtomicInteger _active;
+
+    /** The first exception thrown by a chunk. */
+    private final AtomicReference<Throwable> _exception = new AtomicReference<Throwable>();
+
+    /** The partial results of all chunks, in no particular order. */
+    private final Queue<Partial> _partials = new ConcurrentLinkedQueue<Partial>();
+
+    /**
+     * Creates a {@code ParallelLoop}.
+     *
+     * @param size the size of the index range
+     */
+    ParallelLoop(RxJavaPlugin plugin, int size)
+    {
+        TaskFactory factory = plugin.getTaskFactory();
+
+        _task = new Task<R>(plugin, factory.defaultExecutor, "");
+        _mainExecutor = factory.defaultExecutor;
+        _size = size;
+        _workers = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), (size + MIN_CHUNK - 1) / MIN_CHUNK));
+        _active = new AtomicInteger(_workers);
+    }
+
+    /**
+     * Runs a chunk of the index range.
+     *
+     * @param from the first index, inclusive
+     * @param to the last index, exclusive
+     * @return the partial result of the chunk, or null if the loop does not merge partial results
+     */
+    abstract Object runChunk(int from, int to) throws Exception;
+
+    /**
+     * Merges the partial results of all chunks.
+     *
+     * @param partials the partial results in index order
+     * @return the result of the loop
+     */
+    abstract R merge(List<Object> partials) throws Exception;
+
+    /**
+     * Starts the workers. If the executor rejects a worker, e.g. because the plugin has been disabled,
+     * the {@code Task} faults with the rejection and the workers already started stop at their next chunk.
+     *
+     * @param executor the executor to run the workers on
+     * @return the task completed with the result of the loop
+     */
+    Task<R> start(Executor executor)
+    {
+        for (int i = 0; i < _workers; i++)
+        {
+            try
+            {
+                executor.execute(this);
+            }
+            catch (RuntimeException e)
+            {
+                _cursor.set(_size);
+                _task.setException(e);
+                // the workers that were not started never finish
+                _active.addAndGet(i - _workers);
+                break;
+            }
+        }
+
+        return _task;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run()
+    {
+        List<Partial> partials = null;
+
+        try
+        {
+            int from;
+
+            while (!_task.isDone() && (from = _cursor.get()) < _size)
+            {
+                int chunk = Math.max(MIN_CHUNK, (_size - from) / (_workers * 2));
+                int to = from + Math.min(chunk, _size - from);
+
+                if (!_cursor.compareAndSet(from, to))
+                {
+                    continue;
+                }
+
+                Object partial = runChunk(from, to);
+
+                if (partial != null)
+                {
+                    if (partials == null)
+                    {
+                        partials = new ArrayList<Partial>();
+                    }
+
+                    partials.add(new Partial(from, partial));
+                }
+            }
+        }
+        catch (Throwable t)
+        {
+            _exception.compareAndSet(null, t);
+            _cursor.set(_size);
+        }
+        finally
+        {
+            if (partials != null)
+            {
+                _partials.addAll(partials);
+            }
+
+            if (_active.decrementAndGet() == 0)
+            {
+                finish();
+            }
+        }
+    }
+
+    /**
+     * Merges the partial results and completes the task on the main executor.
+     */
+    private void finish()
+    {
+        if (_task.isDone())
+        {
+            return;
+        }
+
+        R result = null;
+        Throwable exception = _exception.get();
+
+        if (exception == null)
+        {
+            List<Partial> sorted = new ArrayList<Partial>(_partials);
+            Collections.sort(sorted, BY_START);
+
+            List<Object> values = new ArrayList<Object>(sorted.size());
+
+            for (Partial partial : sorted)
+            {
+                values.add(partial.value);
+            }
+
+            try
+            {
+                result = merge(values);
+            }
+            catch (Throwable t)
+            {
+                exception = t;
+            }
+        }
+
+        final R value = result;
+        final Throwable failure = exception;
+
+        _mainExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (failure != null)
+                {
+                    _task.setException(failure);
+                }
+                else
+                {
+                    _task.set(value);
+                }
+            }
+        });
+    }
+}
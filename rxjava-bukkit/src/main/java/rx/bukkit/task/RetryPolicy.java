@@ -0,0 +1,121 @@
+/*
+ *  Copyright (c) 2014 Ryan Michela.
+ *  
+ *  Filename: RetryPolicy.java
+ */
+package rx.bukkit.task;
+
+import rx.functions.Func1;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The {@code RetryPolicy} defines how often and after which delay {@link TaskFactory#retry} repeats a
+ * failed {@code Callable}. Delays are measured in server ticks and grow exponentially from the initial
+ * delay up to the maximum delay; a jitter spreads out retries of callables that failed at the same time.
+ */
+public class RetryPolicy
+{
+    /** The _max attempts. */
+    private final int _maxAttempts;
+
+    /** The _initial delay ticks. */
+    private final long _initialDelayTicks;
+
+    /** The _max delay ticks. */
+    private final long _maxDelayTicks;
+
+    /** The _multiplier. */
+    private double _multiplier = 2.0;
+
+    /** The _jitter. */
+    private double _jitter = 0.5;
+
+    /** The predicate selecting the exceptions to retry on. */
+    private Func1<Throwable, Boolean> _retryOn;
+
+    /**
+     * Creates a {@code RetryPolicy}.
+     *
+     * @param maxAttempts the maximum number of attempts, including the first one
+     * @param initialDelayTicks the delay before the first retry
+     * @param maxDelayTicks the upper bound of the delay
+     */
+    public RetryPolicy(int maxAttempts, long initialDelayTicks, long maxDelayTicks)
+    {
+        if (maxAttempts < 1)
+        {
+            throw new IllegalArgumentException("The maxAttempts argument must be at least 1.");
+        }
+
+        _maxAttempts = maxAttempts;
+        _initialDelayTicks = initialDelayTicks;
+        _maxDelayTicks = Math.max(initialDelayTicks, maxDelayTicks);
+    }
+
+    /**
+     * Sets the factor the delay grows by with every retry.
+     *
+     * @param multiplier the multiplier
+     * @return this policy
+     */
+    public RetryPolicy withMultiplier(double multiplier)
+    {
+        _multiplier = multiplier;
+
+        return this;
+    }
+
+    /**
+     * Sets the fraction of the delay that is randomized, between 0 (none) and 1 (full jitter).
+     *
+     * @param jitter the jitter
+     * @return this policy
+     */
+    public RetryPolicy withJitter(double jitter)
+    {
+        _jitter = Math.max(0, Math.min(1, jitter));
+
+        return this;
+    }
+
+    /**
+     * Restricts retries to the exceptions accepted by the predicate.
+     *
+     * @param retryOn the predicate
+     * @return this policy
+     */
+    public RetryPolicy retryOn(Func1<Throwable, Boolean> retryOn)
+    {
+        _retryOn = retryOn;
+
+        return this;
+    }
+
+    /**
+     * Checks if another attempt is to be made after the given failed attempt.
+     *
+     * @param attempt the number of the failed attempt, starting at 1
+     * @param t the exception of the failed attempt
+     * @return true, if the callable is to be retried
+     */
+    boolean shouldRetry(int attempt, Throwable t)
+    {
+        return attempt < _maxAttempts && (_retryOn == null || Boolean.TRUE.equals(_retryOn.call(t)));
+    }
+
+    /**
+     * Gets the delay before the retry following the given failed attempt.
+     *
+     * @param attempt the number of the failed attempt, starting at 1
+     * @return the delay in ticks
+     */
+    long delayTicks(int attempt)
+    {
+        double delay = Math.min(_maxDelayTicks, _initialDelayTicks * Math.pow(_multiplier, attempt - 1));
+
+        delay -= delay * _jitter * ThreadLocalRandom.current().nextDouble();
+
+        return Math.round(delay);
+    }
+}
@@ -6,31 +6,74 @@
  */
 package rx.bukkit.task;
 
+import rx.Observable;
+import rx.Subscriber;
+import rx.Subscription;
 import rx.bukkit.RxJavaPlugin;
-import rx.functions.Action1;
+import rx.bukkit.scheduler.BukkitRxScheduler;
+import rx.bukkit.scheduler.TickTimer;
+import rx.functions.Action0;
+import rx.functions.Func1;
+import rx.subscriptions.Subscriptions;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * <p> The {@code Task} extends the {@link FutureTask} with new methods (see {@code continueWith}) to support
+ * <p> The {@code Task} is a {@link RunnableFuture} with new methods (see {@code continueWith}) to support
  * the composition of asynchronous operations. Therefor the {@code Task} can be used to wrap
  * a {@link Callable} and executes a callback function ({@link TaskFunc}) if
  * the {@code Task} is done.
  *
+ * <p> The whole lifecycle of a {@code Task} lives in a single state word that is only ever changed by
+ * compare-and-set. While the {@code Task} is pending the state word holds its continuations: nothing, a single
+ * continuation stored inline, or a Treiber stack of {@link Node}s. Completion swaps the stack for the final
+ * {@link Outcome} and starts the continuations that were registered, so neither registering nor firing a
+ * continuation takes a lock.
+ *
  * @param <T> The result type returned by this Task's {@code get} methods.
  */
-public class Task<T> extends FutureTask<T> implements ITask<T>, ITaskStart
+public class Task<T> implements RunnableFuture<T>, ITask<T>, ITaskStart
 {
+    /** The updater of the state word. */
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Task, Object> STATE =
+            AtomicReferenceFieldUpdater.newUpdater(Task.class, Object.class, "_state");
+
+    /** The updater of the runner thread. */
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Task, Thread> RUNNER =
+            AtomicReferenceFieldUpdater.newUpdater(Task.class, Thread.class, "_runner");
+
+    /** The shared outcome of every cancelled task. */
+    private static final Outcome CANCELLED = new Outcome(null, null, true);
+
     private RxJavaPlugin plugin;
-    
-    /** The _new task list. */
-    private final ArrayList<ITaskStart> _newTaskList = new ArrayList<ITaskStart>();
+
+    /**
+     * The state word: {@code null} or the continuations while pending, the {@link Outcome} once completed.
+     */
+    private volatile Object _state;
+
+    /** The thread running the callable, if any. */
+    private volatile Thread _runner;
+
+    /** The _callable, released once the task has completed. */
+    private Callable<T> _callable;
+
+    /** The callback function of a continuation, released once the task has completed. */
+    private TaskFunc<Object, T> _func;
     
     /** The _executor. */
     private Executor _executor;
@@ -39,14 +82,233 @@ public class Task<T> extends FutureTask<T> implements ITask<T>, ITaskStart
     private String _id;
     
     /** The boolean is result read. */
-    private boolean _blnIsResultRead = false;
-    
-    /** The boolean is done. */
-    private boolean _blnIsDone = false;
+    private volatile boolean _blnIsResultRead = false;
     
     /** The boolean is started. */
-    private boolean _blnIsStarted = false;
+    private volatile boolean _blnIsStarted = false;
+
+    /** The antecedent of a continuation, released once the task has completed. */
+    private Task<?> _antecedent;
+
+    /** The continuation options as a bit mask, see {@link TaskContinuationOptions#toMask}. */
+    private int _options;
+
+    /** The cancellation token, if any. */
+    private CancellationToken _token;
+
+    /** The id of the Bukkit task this {@code Task} has been queued as, or -1. */
+    private volatile int _bukkitTaskId = -1;
+
+    /** The lifecycle timestamps if this {@code Task} has been sampled by the {@link TaskTracer}, or null. */
+    private TaskTracer.Trace _trace;
+
+    /**
+     * The final outcome of a {@code Task}.
+     */
+    static final class Outcome
+    {
+        final Object value;
+        final Throwable exception;
+        final boolean cancelled;
+
+        Outcome(Object value, Throwable exception, boolean cancelled)
+        {
+            this.value = value;
+            this.exception = exception;
+            this.cancelled = cancelled;
+        }
+    }
+
+    /**
+     * An element of the continuation stack. The bottom of the stack is the bare first continuation,
+     * so a {@code Task} with a single continuation never allocates a {@code Node}.
+     */
+    static final class Node
+    {
+        final ITaskStart continuation;
+        final Object next;
+
+        Node(ITaskStart continuation, Object next)
+        {
+            this.continuation = continuation;
+            this.next = next;
+        }
+    }
+
+    /**
+     * A continuation that wakes up a thread blocked in {@code get}.
+     */
+    private static final class Waiter implements ITaskStart
+    {
+        private final Thread _thread;
+
+        Waiter(Thread thread)
+        {
+            _thread = thread;
+        }
+
+        @Override
+        public void start()
+        {
+            LockSupport.unpark(_thread);
+        }
+    }
+    
+    /**
+     * A continuation shared by several tasks that calls {@code completed} once all of them have completed.
+     */
+    private abstract static class Countdown implements ITaskStart
+    {
+        private static final AtomicIntegerFieldUpdater<Countdown> REMAINING =
+                AtomicIntegerFieldUpdater.newUpdater(Countdown.class, "_remaining");
+
+        private volatile int _remaining;
+
+        Countdown(int count)
+        {
+            _remaining = count;
+        }
+
+        @Override
+        public void start()
+        {
+            if (REMAINING.decrementAndGet(this) == 0)
+            {
+                completed();
+            }
+        }
+
+        abstract void completed();
+    }
+    
+    /**
+     * The state of a {@code whenAny}: the first entrant to complete decides the race and withdraws the others.
+     */
+    private static final class Race<V>
+    {
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<Race> DECIDED =
+                AtomicIntegerFieldUpdater.newUpdater(Race.class, "_decided");
+
+        private final Task<V> _taskResult;
+        private final Entrant<V>[] _entrants;
+        private volatile int _decided;
 
+        @SuppressWarnings("unchecked")
+        Race(Task<V> taskResult, int count)
+        {
+            _taskResult = taskResult;
+            _entrants = new Entrant[count];
+        }
+
+        boolean isDecided()
+        {
+            return _decided != 0;
+        }
+
+        void enter(int index, Task<V> task)
+        {
+            Entrant<V> entrant = new Entrant<V>(this, task);
+
+            _entrants[index] = entrant;
+            task.addContinuation(entrant);
+
+            // the race may have been decided while registering, after the winner has withdrawn the entrants
+            if (isDecided())
+            {
+                task.removeContinuation(entrant);
+            }
+        }
+
+        void finish(Task<V> winner)
+        {
+            if (!DECIDED.compareAndSet(this, 0, 1))
+            {
+                return;
+            }
+
+            for (Entrant<V> entrant : _entrants)
+            {
+                if (entrant != null && entrant._task != winner)
+                {
+                    entrant._task.removeContinuation(entrant);
+                }
+            }
+
+            Outcome outcome = (Outcome) winner._state;
+
+            winner._blnIsResultRead = true;
+            _taskResult._id = winner._id;
+            _taskResult.complete(outcome);
+        }
+    }
+
+    /**
+     * The continuation of a single task taking part in a {@link Race}.
+     */
+    private static final class Entrant<V> implements ITaskStart
+    {
+        private final Race<V> _race;
+        private final Task<V> _task;
+
+        Entrant(Race<V> race, Task<V> task)
+        {
+            _race = race;
+            _task = task;
+        }
+
+        @Override
+        public void start()
+        {
+            _race.finish(_task);
+        }
+    }
+    
+    /**
+     * The continuation of an unwrapped {@code Task}: first attached to the outer task, then to the inner
+     * task it yields, whose outcome is finally copied to the proxy.
+     */
+    private static final class Unwrap implements ITaskStart
+    {
+        private final Task<?> _outer;
+        private final Task<Object> _proxy;
+        private Task<?> _inner;
+
+        Unwrap(Task<?> outer, Task<Object> proxy)
+        {
+            _outer = outer;
+            _proxy = proxy;
+        }
+
+        @Override
+        public void start()
+        {
+            if (_inner != null)
+            {
+                _inner._blnIsResultRead = true;
+                _proxy.complete((Outcome) _inner._state);
+                return;
+            }
+
+            Outcome outcome = (Outcome) _outer._state;
+
+            _outer._blnIsResultRead = true;
+
+            if (outcome.cancelled || outcome.exception != null || outcome.value == null)
+            {
+                _proxy.complete(outcome);
+            }
+            else if (!(outcome.value instanceof Task))
+            {
+                _proxy.setException(new ClassCastException("The result of the unwrapped task is not a Task."));
+            }
+            else
+            {
+                _inner = (Task<?>) outcome.value;
+                _inner.addContinuation(this);
+            }
+        }
+    }
     
     /**
      * Creates a {@code Task} that will, upon starting, execute the given {@code Callable}. 
@@ -89,10 +351,72 @@ public class Task<T> extends FutureTask<T> implements ITask<T>, ITaskStart
      */
     public Task(RxJavaPlugin plugin, Callable<T> callable, Executor executor, String id)
     {
-        super(callable);
+        if (callable == null)
+        {
+            throw new NullPointerException();
+        }
+
+        this.plugin = plugin;
+        _callable = callable;
+        _executor = executor;
+        _id = id;
+        _trace = plugin != null ? plugin.getTaskFactory().getTracer().sample() : null;
+
+        if (_executor == null)
+        {
+            throw new IllegalArgumentException("The executor argument cannot be null.");
+        }
+    }
+
+    /**
+     * Creates a pending {@code Task} without a {@code Callable} that is completed by its creator.
+     *
+     * @param executor the executor inherited by continuations
+     * @param id the id
+     */
+    Task(RxJavaPlugin plugin, Executor executor, String id)
+    {
+        this.plugin = plugin;
+        _executor = executor;
+        _id = id;
+        _blnIsStarted = true;
+    }
+
+    /**
+     * Creates a {@code Task} that has already completed with the given outcome. It is immutable
+     * and may be shared, since starting or cancelling a completed {@code Task} has no effect.
+     *
+     * @param executor the executor inherited by continuations
+     * @param id the id
+     * @param outcome the outcome
+     */
+    Task(RxJavaPlugin plugin, Executor executor, String id, Outcome outcome)
+    {
+        this(plugin, executor, id);
+        _state = outcome;
+        _blnIsResultRead = true;
+    }
 
+    /**
+     * Creates a continuation {@code Task} that will, upon starting, call the given {@link TaskFunc}
+     * with its antecedent.
+     *
+     * @param antecedent the antecedent
+     * @param taskFunc the callback function
+     * @param executor the executor to use for the execution of the task
+     * @param id the id
+     * @param options the continuation options as a bit mask
+     */
+    @SuppressWarnings("unchecked")
+    private <V> Task(RxJavaPlugin plugin, Task<V> antecedent, TaskFunc<V, T> taskFunc, Executor executor, String id, int options)
+    {
+        this.plugin = plugin;
+        _antecedent = antecedent;
+        _func = (TaskFunc<Object, T>) (TaskFunc<?, T>) taskFunc;
         _executor = executor;
         _id = id;
+        _options = options;
+        _trace = plugin != null ? plugin.getTaskFactory().getTracer().sample() : null;
 
         if (_executor == null)
         {
@@ -105,7 +429,7 @@ public class Task<T> extends FutureTask<T> implements ITask<T>, ITaskStart
     }
 
     /**
-     * Creates a {@code Task} from the specified {@link TaskCompletionSource}.
+     * Gets the {@code Task} of the specified {@link TaskCompletionSource}, see {@link TaskCompletionSource#getTask}.
      *
      * @param <V> The result type returned by the Task's {@code get} methods.
      * @param source the source to create the task from
@@ -113,29 +437,58 @@ public class Task<T> extends FutureTask<T> implements ITask<T>, ITaskStart
      */
     static <V> Task<V> fromSource(RxJavaPlugin plugin, final TaskCompletionSource<V> source)
     {
-        final Task<V> task = new Task<V>(plugin, new Callable<V>()
+        return source.getTask(plugin);
+    }
+
+    /**
+     * Creates a {@code Task} that completes with the last item emitted by the specified {@link Observable},
+     * or null if it completes without emitting. Cancelling the {@code Task} unsubscribes from the observable.
+     *
+     * @param <V> The result type returned by the Task's {@code get} methods.
+     * @param observable the observable to subscribe to
+     * @return the task
+     */
+    static <V> Task<V> fromObservable(RxJavaPlugin plugin, Observable<? extends V> observable)
+    {
+        final Task<V> task = new Task<V>(plugin, plugin.getTaskFactory().defaultExecutor, "");
+
+        final Subscriber<V> subscriber = new Subscriber<V>()
         {
+            private V _last;
+
             @Override
-            public V call() throws Exception
+            public void onNext(V value)
             {
-                return null;
+                _last = value;
             }
-        });
 
-        source.setSetCallback(new Action1<V>() {
             @Override
-            public void call(V value) {
-                task.set(value);
+            public void onCompleted()
+            {
+                task.set(_last);
             }
-        });
 
-        source.setExceptionCallback(new Action1<Throwable>() {
             @Override
-            public void call(Throwable value) {
-                task.setException(value);
+            public void onError(Throwable e)
+            {
+                task.setException(e);
+            }
+        };
+
+        task.addContinuation(new ITaskStart()
+        {
+            @Override
+            public void start()
+            {
+                if (task.isCancelled())
+                {
+                    subscriber.unsubscribe();
+                }
             }
         });
 
+        observable.subscribe(subscriber);
+
         return task;
     }
 
@@ -161,18 +514,17 @@ public class Task<T> extends FutureTask<T> implements ITask<T>, ITaskStart
      */
     static <V> Task<V> fromResult(RxJavaPlugin plugin, final V data, String id)
     {
-        Task<V> task = new Task<V>(plugin, new Callable<V>()
+        if (isNullOrEmpty(id))
         {
-            @Override
-            public V call() throws Exception
+            Task<V> cached = plugin.getTaskFactory().cachedResult(data);
+
+            if (cached != null)
             {
-                return data;
+                return cached;
             }
-        }, id);
-
-        task.set(data);
+        }
 
-        return task;
+        return new Task<V>(plugin, plugin.getTaskFactory().defaultExecutor, id, new Outcome(data, null, false));
     }
 
     /**
@@ -197,18 +549,7 @@ public class Task<T> extends FutureTask<T> implements ITask<T>, ITaskStart
      */
     static <V> Task<V> fromException(RxJavaPlugin plugin, final Throwable t, String id)
     {
-        Task<V> task = new Task<V>(plugin, new Callable<V>()
-        {
-            @Override
-            public V call() throws Exception
-            {
-                return null;
-            }
-        }, id);
-
-        task.setException(t);
-
-        return task;
+        return new Task<V>(plugin, plugin.getTaskFactory().defaultExecutor, id, new Outcome(null, t, false));
     }
 
     /**
@@ -231,7 +572,8 @@ public class Task<T> extends FutureTask<T> implements ITask<T>, ITaskStart
     }
     
     /**
-     * Waits for the completion of all specified tasks.
+     * Waits for the completion of all specified tasks. The returned {@code Task} completes on the thread
+     * that completes the last of the tasks, without any intermediate tasks or executor hops.
      *
      * @param <VResult> the generic type
      * @param tasks the tasks to wait for
@@ -241,214 +583,1122 @@ public class Task<T> extends FutureTask<T> implements ITask<T>, ITaskStart
     {       
         if (tasks == null || tasks.size() == 0)
         {
-        	List<Task<VResult>> emptyList = new ArrayList<Task<VResult>>();
-            return Task.fromResult(plugin, emptyList);
+            return Task.fromResult(plugin, Collections.<Task<VResult>>emptyList());
         }
-        
-        Task<VResult> task = tasks.get(0);
 
-        for (int i = 1; i < tasks.size(); i++)
+        final Task<List<Task<VResult>>> taskResult = new Task<List<Task<VResult>>>(plugin, plugin.getTaskFactory().defaultExecutor, "");
+
+        Countdown countdown = new Countdown(tasks.size())
         {
-            final int finalI = i;
-            
-            task = task.continueWith(new TaskFunc<VResult, Task<VResult>>()
+            @Override
+            void completed()
             {
-                @Override
-                public Task<VResult> call(Task<VResult> task) throws Exception
+                for (Task<VResult> task : tasks)
                 {
-                    task.markAsRead();
-                    
-                    return tasks.get(finalI);
+                    task._blnIsResultRead = true;
                 }
-            }).unwrap();
+
+                taskResult.set(tasks);
+            }
+        };
+
+        for (Task<VResult> task : tasks)
+        {
+            task.addContinuation(countdown);
         }
-        
-        return task.continueWith(new TaskFunc<VResult, List<Task<VResult>>>() {
+
+        return taskResult;
+    }
+
+    /**
+     * Waits for the completion of all specified tasks and collects their results into an {@code int[]}.
+     * The returned {@code Task} fails with the exception of the first failed task.
+     *
+     * @param tasks the tasks to wait for
+     * @return the task
+     */
+    static Task<int[]> whenAllInt(RxJavaPlugin plugin, final List<Task<Integer>> tasks)
+    {
+        return whenAllValues(plugin, tasks, new Func1<Object[], int[]>()
+        {
             @Override
-            public List<Task<VResult>> call(Task<VResult> task) throws Exception {
-                
-                task.markAsRead();
-                
-                return tasks;
+            public int[] call(Object[] values)
+            {
+                int[] result = new int[values.length];
+
+                for (int i = 0; i < values.length; i++)
+                {
+                    result[i] = (Integer) values[i];
+                }
+
+                return result;
             }
         });
     }
 
     /**
-     * Waits for the completion of any task.
+     * Waits for the completion of all specified tasks and collects their results into a {@code long[]}.
+     * The returned {@code Task} fails with the exception of the first failed task.
+     *
+     * @param tasks the tasks to wait for
+     * @return the task
+     */
+    static Task<long[]> whenAllLong(RxJavaPlugin plugin, final List<Task<Long>> tasks)
+    {
+        return whenAllValues(plugin, tasks, new Func1<Object[], long[]>()
+        {
+            @Override
+            public long[] call(Object[] values)
+            {
+                long[] result = new long[values.length];
+
+                for (int i = 0; i < values.length; i++)
+                {
+                    result[i] = (Long) values[i];
+                }
+
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Waits for the completion of all specified tasks and collects their results into a {@code double[]}.
+     * The returned {@code Task} fails with the exception of the first failed task.
+     *
+     * @param tasks the tasks to wait for
+     * @return the task
+     */
+    static Task<double[]> whenAllDouble(RxJavaPlugin plugin, final List<Task<Double>> tasks)
+    {
+        return whenAllValues(plugin, tasks, new Func1<Object[], double[]>()
+        {
+            @Override
+            public double[] call(Object[] values)
+            {
+                double[] result = new double[values.length];
+
+                for (int i = 0; i < values.length; i++)
+                {
+                    result[i] = (Double) values[i];
+                }
+
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Waits for the completion of all specified tasks and converts their results in task order.
+     *
+     * @param <V> the value type of the tasks
+     * @param <R> the result type
+     * @param tasks the tasks to wait for
+     * @param convert the conversion of the results
+     * @return the task
+     */
+    private static <V, R> Task<R> whenAllValues(RxJavaPlugin plugin, final List<Task<V>> tasks, final Func1<Object[], R> convert)
+    {
+        final Task<R> taskResult = new Task<R>(plugin, plugin.getTaskFactory().defaultExecutor, "");
+        final int count = tasks == null ? 0 : tasks.size();
+
+        Countdown countdown = new Countdown(count)
+        {
+            @Override
+            void completed()
+            {
+                Object[] values = new Object[count];
+
+                for (int i = 0; i < count; i++)
+                {
+                    Task<V> task = tasks.get(i);
+                    Outcome outcome = (Outcome) task._state;
+
+                    task._blnIsResultRead = true;
+
+                    if (outcome.cancelled)
+                    {
+                        taskResult.cancel(false);
+                        return;
+                    }
+
+                    if (outcome.exception != null)
+                    {
+                        taskResult.setException(outcome.exception);
+                        return;
+                    }
+
+                    values[i] = outcome.value;
+                }
+
+                try
+                {
+                    taskResult.set(convert.call(values));
+                }
+                catch (Throwable t)
+                {
+                    taskResult.setException(t);
+                }
+            }
+        };
+
+        if (count == 0)
+        {
+            countdown.completed();
+        }
+
+        for (int i = 0; i < count; i++)
+        {
+            tasks.get(i).addContinuation(countdown);
+        }
+
+        return taskResult;
+    }
+
+    /**
+     * Waits for the completion of any task.
+     *
+     * @param <VResult> the generic type
+     * @param tasks the tasks to wait for
+     * @return the task
+     */
+    static <VResult> Task<VResult> whenAny(RxJavaPlugin plugin, final Task<VResult> ... tasks)
+    {
+        List<Task<VResult>> list = new ArrayList<Task<VResult>>();
+
+        if (tasks != null)
+        {
+            for (Task<VResult> task: tasks)
+            {
+                list.add(task);
+            }
+        }
+
+        return whenAny(plugin, list);
+    }
+
+    /**
+     * Waits for the completion of any task. The returned {@code Task} takes over the outcome and the id
+     * of the first task to complete, after which the continuations on the other tasks are removed.
+     *
+     * @param <VResult> the generic type
+     * @param tasks the tasks to wait for
+     * @return the task
+     */
+    static <VResult> Task<VResult> whenAny(RxJavaPlugin plugin, final List<Task<VResult>> tasks)
+    {
+        if (tasks == null || tasks.size() == 0)
+        {
+            return Task.fromResult(plugin, null);
+        }
+
+        Race<VResult> race = new Race<VResult>(new Task<VResult>(plugin, plugin.getTaskFactory().defaultExecutor, ""), tasks.size());
+
+        for (int i = 0; i < tasks.size() && !race.isDecided(); i++)
+        {
+            race.enter(i, tasks.get(i));
+        }
+
+        return race._taskResult;
+    }
+
+    /* (non-Javadoc)
+     * @see de.telekom.util.concurrent.ITaskStart#start()
+     */
+    @Override
+    public void start()
+    {
+        if (!prepareStart())
+        {
+            return;
+        }
+
+        if ((_options & TaskContinuationOptions.ExecuteSynchronously.bit()) != 0)
+        {
+            // the completing thread is not necessarily a thread of the executor, so nothing may be fused
+            runChain(null);
+            return;
+        }
+
+        try
+        {
+            if (_executor instanceof BukkitRxScheduler)
+            {
+                _bukkitTaskId = ((BukkitRxScheduler) _executor).executeWithId(this);
+            }
+            else
+            {
+                _executor.execute(this);
+            }
+        }
+        catch (RuntimeException e)
+        {
+            // e.g. rejected after the plugin has been disabled, fault instead of staying pending forever
+            complete(new Outcome(null, e, false));
+            throw e;
+        }
+    }
+
+    /**
+     * Marks this {@code Task} as started and cancels it if it is a continuation
+     * that is not eligible for the outcome of its antecedent.
+     *
+     * @return true, if this {@code Task} has to run
+     */
+    private boolean prepareStart()
+    {
+        if (_state instanceof Outcome)
+        {
+            // completed or cancelled already, e.g. a shared completed task from fromResult; starting it has no effect
+            return false;
+        }
+
+        if (_blnIsStarted)
+        {
+            if (plugin.getTaskFactory().unhandledExceptions != null)
+            {
+            	TaskException ex = new TaskStartException("The task has already been started.", this);
+            	
+                plugin.getTaskFactory().unhandledExceptions.call(ex);
+            }
+        }
+        
+        _blnIsStarted = true;
+
+        if (_state instanceof Outcome)
+        {
+            // cancelled concurrently
+            return false;
+        }
+
+        if (_token != null && _token.isCancellationRequested())
+        {
+            cancel(false);
+            return false;
+        }
+
+        Task<?> antecedent = _antecedent;
+
+        if (_options != 0 && antecedent != null && !isEligible((Outcome) antecedent._state))
+        {
+            cancel(false);
+            return false;
+        }
+
+        // read once, a concurrent completion clears it
+        TaskTracer.Trace trace = _trace;
+
+        if (trace != null)
+        {
+            trace.queued = System.nanoTime();
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks the continuation options against the outcome of the antecedent.
+     *
+     * @param antecedent the outcome of the antecedent
+     * @return true, if the continuation has to run
+     */
+    private boolean isEligible(Outcome antecedent)
+    {
+        TaskContinuationOptions status = antecedent.cancelled ? TaskContinuationOptions.OnlyOnCanceled
+                : antecedent.exception != null ? TaskContinuationOptions.OnlyOnFaulted
+                : TaskContinuationOptions.OnlyOnRanToCompletion;
+
+        int only = _options & (TaskContinuationOptions.OnlyOnCanceled.bit()
+                | TaskContinuationOptions.OnlyOnFaulted.bit()
+                | TaskContinuationOptions.OnlyOnRanToCompletion.bit());
+
+        if (only != 0 && (only & status.bit()) == 0)
+        {
+            return false;
+        }
+
+        switch (status)
+        {
+            case OnlyOnCanceled:
+                return (_options & TaskContinuationOptions.NotOnCanceled.bit()) == 0;
+            case OnlyOnFaulted:
+                return (_options & TaskContinuationOptions.NotOnFaulted.bit()) == 0;
+            default:
+                return (_options & TaskContinuationOptions.NotOnRanToCompletion.bit()) == 0;
+        }
+    }
+    
+    /* (non-Javadoc)
+     * @see java.util.concurrent.RunnableFuture#run()
+     */
+    @Override
+    public void run()
+    {
+        runChain(_executor);
+    }
+
+    /**
+     * Runs this {@code Task} followed by the chain of continuations fused into it. A continuation
+     * targeting the executor that is running the chain is run right away on the current thread instead
+     * of being dispatched to the executor again, so a chain of cheap continuations costs a single hop.
+     *
+     * @param executor the executor running the current thread, or null if unknown
+     */
+    private void runChain(Executor executor)
+    {
+        Task<?> task = this;
+
+        while (task != null)
+        {
+            task = task.runOnce(executor);
+        }
+    }
+
+    /**
+     * Runs this {@code Task} and completes it.
+     *
+     * @param executor the executor running the current thread, or null if unknown
+     * @return the continuation fused into this run, if any
+     */
+    private Task<?> runOnce(Executor executor)
+    {
+        _blnIsStarted = true;
+
+        if ((_callable == null && _func == null) || _state instanceof Outcome || !RUNNER.compareAndSet(this, null, Thread.currentThread()))
+        {
+            return null;
+        }
+
+        // read once, a concurrent cancellation clears it
+        TaskTracer.Trace trace = _trace;
+
+        if (trace != null)
+        {
+            trace.started = System.nanoTime();
+        }
+
+        try
+        {
+            Outcome outcome;
+
+            try
+            {
+                outcome = new Outcome(call(), null, false);
+            }
+            catch (Throwable t)
+            {
+                outcome = new Outcome(null, t, false);
+            }
+
+            Object stack = swapState(outcome);
+
+            return stack instanceof Outcome ? null : fireContinuations(stack, executor);
+        }
+        finally
+        {
+            _runner = null;
+        }
+    }
+
+    /**
+     * Calls the callable or the callback function of this {@code Task}.
+     *
+     * @return the result
+     */
+    @SuppressWarnings("unchecked")
+    private T call() throws Exception
+    {
+        Callable<T> callable = _callable;
+
+        if (callable != null)
+        {
+            return callable.call();
+        }
+
+        Task<Object> antecedent = (Task<Object>) _antecedent;
+        T result = _func.call(antecedent);
+
+        if (! antecedent._blnIsResultRead)
+        {
+            if (plugin.getTaskFactory().unhandledExceptions != null)
+            {
+                TaskException ex = new TaskResultException("The task result has not been read within the ContinueWith method.", antecedent);
+
+                plugin.getTaskFactory().unhandledExceptions.call(ex);
+            }
+        }
+
+        return result;
+    }
+    
+    /* (non-Javadoc)
+     * @see java.util.concurrent.Future#get()
+     */
+    @Override
+    public T get() throws InterruptedException, ExecutionException
+    {
+        _blnIsResultRead = true;
+
+        Object state = _state;
+
+        if (!(state instanceof Outcome))
+        {
+            try
+            {
+                state = awaitDone(false, 0L);
+            }
+            catch (TimeoutException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        return report((Outcome) state);
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.Future#get(long, java.util.concurrent.TimeUnit)
+     */
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+    {
+        _blnIsResultRead = true;
+
+        Object state = _state;
+
+        if (!(state instanceof Outcome))
+        {
+            state = awaitDone(true, unit.toNanos(timeout));
+        }
+
+        return report((Outcome) state);
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.Future#cancel(boolean)
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning)
+    {
+        if (!complete(CANCELLED))
+        {
+            return false;
+        }
+
+        int bukkitTaskId = _bukkitTaskId;
+
+        if (bukkitTaskId != -1)
+        {
+            // withdraw the task from the Bukkit scheduler if it is still queued
+            ((BukkitRxScheduler) _executor).cancel(bukkitTaskId);
+        }
+
+        if (mayInterruptIfRunning)
+        {
+            Thread runner = _runner;
+
+            if (runner != null)
+            {
+                runner.interrupt();
+            }
+        }
+
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.Future#isCancelled()
+     */
+    @Override
+    public boolean isCancelled()
+    {
+        Object state = _state;
+
+        return state instanceof Outcome && ((Outcome) state).cancelled;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.Future#isDone()
+     */
+    @Override
+    public boolean isDone()
+    {
+        return _state instanceof Outcome;
+    }
+
+    /**
+     * Completes this {@code Task} with the given result unless it has already completed.
+     *
+     * @param value the result
+     */
+    protected void set(T value)
+    {
+        complete(new Outcome(value, null, false));
+    }
+
+    /**
+     * Completes this {@code Task} with the given exception unless it has already completed.
+     *
+     * @param t the exception
+     */
+    protected void setException(Throwable t)
+    {
+        complete(new Outcome(null, t, false));
+    }
+
+    /**
+     * Swaps the continuation stack for the outcome and starts the continuations in registration order.
+     *
+     * @param outcome the outcome
+     * @return true, if this call completed the task
+     */
+    boolean complete(Outcome outcome)
+    {
+        Object stack = swapState(outcome);
+
+        if (stack instanceof Outcome)
+        {
+            return false;
+        }
+
+        fireContinuations(stack, null);
+
+        return true;
+    }
+
+    /**
+     * Swaps the continuation stack for the outcome unless the task has already completed.
+     *
+     * @param outcome the outcome
+     * @return the continuation stack, or the existing outcome if the task has already completed
+     */
+    private Object swapState(Outcome outcome)
+    {
+        Object state;
+
+        do
+        {
+            state = _state;
+
+            if (state instanceof Outcome)
+            {
+                return state;
+            }
+        }
+        while (!STATE.compareAndSet(this, state, outcome));
+
+        _callable = null;
+        _func = null;
+        _antecedent = null;
+
+        TaskTracer.Trace trace = _trace;
+
+        if (trace != null)
+        {
+            _trace = null;
+            plugin.getTaskFactory().getTracer().record(_id, trace, outcome);
+        }
+
+        return state;
+    }
+
+    /**
+     * Starts the continuations of the given stack, oldest first. The first continuation {@code Task}
+     * targeting the given executor is not started but returned to be run by the caller.
+     *
+     * @param stack the continuation stack
+     * @param executor the executor running the current thread, or null if unknown
+     * @return the fused continuation, if any
+     */
+    private Task<?> fireContinuations(Object stack, Executor executor)
+    {
+        if (stack == null)
+        {
+            return null;
+        }
+
+        if (!(stack instanceof Node))
+        {
+            return fire((ITaskStart) stack, executor);
+        }
+
+        int count = 0;
+
+        for (Object s = stack; s != null; s = s instanceof Node ? ((Node) s).next : null)
+        {
+            count++;
+        }
+
+        ITaskStart[] continuations = new ITaskStart[count];
+
+        for (Object s = stack; s != null; s = s instanceof Node ? ((Node) s).next : null)
+        {
+            continuations[--count] = s instanceof Node ? ((Node) s).continuation : (ITaskStart) s;
+        }
+
+        Task<?> fused = null;
+
+        for (ITaskStart continuation : continuations)
+        {
+            Task<?> task = fire(continuation, fused == null ? executor : null);
+
+            if (task != null)
+            {
+                fused = task;
+            }
+        }
+
+        return fused;
+    }
+
+    /**
+     * Starts a continuation, or prepares it to be fused if it is a {@code Task} targeting the given executor.
+     * A continuation that throws, e.g. because its executor rejects it, is reported to
+     * {@link TaskFactory#unhandledExceptions}, so the remaining continuations, including blocked
+     * {@code get()} callers, are still released.
+     *
+     * @param continuation the continuation
+     * @param executor the executor running the current thread, or null if nothing may be fused
+     * @return the continuation if it has to be run by the caller
+     */
+    private Task<?> fire(ITaskStart continuation, Executor executor)
+    {
+        try
+        {
+            if (executor != null && continuation instanceof Task && ((Task<?>) continuation)._executor == executor)
+            {
+                Task<?> task = (Task<?>) continuation;
+
+                return task.prepareStart() ? task : null;
+            }
+
+            continuation.start();
+        }
+        catch (RuntimeException e)
+        {
+            if (plugin.getTaskFactory().unhandledExceptions != null)
+            {
+                TaskException ex = new TaskContinuationException("A continuation of the task failed to start.", this, e);
+
+                plugin.getTaskFactory().unhandledExceptions.call(ex);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Registers a continuation to be started once this {@code Task} has completed. The
+     * continuation is started immediately if this {@code Task} already has completed.
+     *
+     * @param continuation the continuation
+     */
+    void addContinuation(ITaskStart continuation)
+    {
+        Object state;
+        Object next;
+
+        do
+        {
+            state = _state;
+
+            if (state instanceof Outcome)
+            {
+                continuation.start();
+                return;
+            }
+
+            next = state == null ? continuation : new Node(continuation, state);
+        }
+        while (!STATE.compareAndSet(this, state, next));
+    }
+
+    /**
+     * Removes a continuation that has not been started yet.
+     *
+     * @param continuation the continuation
+     * @return true, if the continuation has been removed
+     */
+    boolean removeContinuation(ITaskStart continuation)
+    {
+        Object state;
+        Object next;
+
+        do
+        {
+            state = _state;
+
+            if (state == null || state instanceof Outcome)
+            {
+                return false;
+            }
+
+            next = without(state, continuation);
+
+            if (next == state)
+            {
+                return false;
+            }
+        }
+        while (!STATE.compareAndSet(this, state, next));
+
+        return true;
+    }
+
+    /**
+     * Returns the given continuation stack without the given continuation, sharing the untouched tail.
+     *
+     * @param stack the continuation stack
+     * @param continuation the continuation to remove
+     * @return the new stack, or the given stack if it does not contain the continuation
+     */
+    private static Object without(Object stack, ITaskStart continuation)
+    {
+        if (stack == continuation)
+        {
+            return null;
+        }
+
+        if (!(stack instanceof Node))
+        {
+            return stack;
+        }
+
+        Node node = (Node) stack;
+
+        if (node.continuation == continuation)
+        {
+            return node.next;
+        }
+
+        Object next = node.next == null ? null : without(node.next, continuation);
+
+        return next == node.next ? node : new Node(node.continuation, next);
+    }
+
+    /**
+     * Blocks the current thread until this {@code Task} has completed.
+     *
+     * @param timed true, if the wait is bounded
+     * @param nanos the maximum time to wait
+     * @return the outcome
+     */
+    private Outcome awaitDone(boolean timed, long nanos) throws InterruptedException, TimeoutException
+    {
+        final long deadline = timed ? System.nanoTime() + nanos : 0L;
+
+        Waiter waiter = new Waiter(Thread.currentThread());
+
+        addContinuation(waiter);
+
+        for (;;)
+        {
+            Object state = _state;
+
+            if (state instanceof Outcome)
+            {
+                return (Outcome) state;
+            }
+
+            if (Thread.interrupted())
+            {
+                removeContinuation(waiter);
+                throw new InterruptedException();
+            }
+
+            if (timed)
+            {
+                long remaining = deadline - System.nanoTime();
+
+                if (remaining <= 0L)
+                {
+                    removeContinuation(waiter);
+                    throw new TimeoutException();
+                }
+
+                LockSupport.parkNanos(this, remaining);
+            }
+            else
+            {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    /**
+     * Returns the result or throws the exception of the given outcome.
+     *
+     * @param outcome the outcome
+     * @return the result
+     */
+    @SuppressWarnings("unchecked")
+    private T report(Outcome outcome) throws ExecutionException
+    {
+        if (outcome.cancelled)
+        {
+            throw new CancellationException();
+        }
+
+        if (outcome.exception != null)
+        {
+            throw new ExecutionException(outcome.exception);
+        }
+
+        return (T) outcome.value;
+    }
+    
+    /**
+     * Gets the raw result from this {@code Task} if this {@code Task} has finished
+     * or null if there is no result.
      *
-     * @param <VResult> the generic type
-     * @param tasks the tasks to wait for
-     * @return the task
+     * @return the raw
      */
-    static <VResult> Task<VResult> whenAny(RxJavaPlugin plugin, final Task<VResult> ... tasks)
+    @SuppressWarnings("unchecked")
+    public T getRaw()
     {
-        List<Task<VResult>> list = new ArrayList<Task<VResult>>();
+        Object state = _state;
 
-        if (tasks != null)
+        if (!(state instanceof Outcome))
         {
-            for (Task<VResult> task: tasks)
-            {
-                list.add(task);
-            }
+            return null;
         }
 
-        return whenAny(plugin, list);
+        _blnIsResultRead = true;
+
+        return (T) ((Outcome) state).value;
     }
 
     /**
-     * Waits for the completion of any task.
+     * Gets the status of this {@code Task}.
      *
-     * @param <VResult> the generic type
-     * @param tasks the tasks to wait for
-     * @return the task
+     * @return the status
      */
-    static <VResult> Task<VResult> whenAny(RxJavaPlugin plugin, final List<Task<VResult>> tasks)
+    public TaskStatus getStatus()
     {
-        if (tasks == null || tasks.size() == 0)
+        return statusOf(_state);
+    }
+
+    /**
+     * Gets the status described by the given state word.
+     *
+     * @param state the state word
+     * @return the status
+     */
+    private static TaskStatus statusOf(Object state)
+    {
+        if (!(state instanceof Outcome))
         {
-            return Task.fromResult(plugin, null);
+            return TaskStatus.Pending;
         }
 
-        final Task<VResult> taskResult = new Task<VResult>(plugin, new Callable<VResult>()
-            {
-                @Override
-                public VResult call() throws Exception
-                {
-                    return null;
-                }
-            });
-
-        for (Task<VResult> task: tasks)
-        {
-            task.continueWith(new TaskFunc<VResult, VResult>() {
-                @Override
-                public VResult call(Task<VResult> task) throws Exception {
-
-                	synchronized (taskResult) {
-									
-	                    try
-	                    {
-	                        if (!taskResult.isDone())
-	                        {
-	                            taskResult._id = task._id;
-	                            taskResult.set(task.get());
-	                        }
-	                    }
-	                    catch (Throwable e)
-	                    {
-	                        taskResult.setException(e);
-	                    }
-                	}
-
-                    return task.get();
-                }
-            });
+        Outcome outcome = (Outcome) state;
+
+        if (outcome.cancelled)
+        {
+            return TaskStatus.Canceled;
         }
 
-        return taskResult;
+        return outcome.exception != null ? TaskStatus.Faulted : TaskStatus.Succeeded;
     }
 
-    /* (non-Javadoc)
-     * @see de.telekom.util.concurrent.ITaskStart#start()
+    /**
+     * Gets the exception this {@code Task} has faulted with, without wrapping it
+     * into an {@link ExecutionException}.
+     *
+     * @return the exception, or null if this {@code Task} has not faulted
      */
-    @Override
-    public void start()
+    public Throwable getException()
     {
-        if (_blnIsStarted)
+        Object state = _state;
+
+        if (!(state instanceof Outcome))
         {
-            if (plugin.getTaskFactory().unhandledExceptions != null)
-            {
-            	TaskException ex = new TaskStartException("The task has already been started.", this);
-            	
-                plugin.getTaskFactory().unhandledExceptions.call(ex);
-            }
+            return null;
         }
-        
-        _blnIsStarted = true;
-        
-        _executor.execute(this);
+
+        _blnIsResultRead = true;
+
+        return ((Outcome) state).exception;
     }
-    
-    /* (non-Javadoc)
-     * @see java.util.concurrent.FutureTask#run()
+
+    /**
+     * Checks if this {@code Task} has completed with a result.
+     *
+     * @return true, if is completed successfully
      */
-    @Override
-    public void run()
+    public boolean isCompletedSuccessfully()
     {
-        _blnIsStarted = true;
-        
-        super.run();
+        return getStatus() == TaskStatus.Succeeded;
     }
-    
-    /* (non-Javadoc)
-     * @see java.util.concurrent.FutureTask#get()
+
+    /**
+     * Unwraps this {@code Task} if the result type is a {@code Task<Task<T>>}. The returned proxy
+     * completes with the outcome of the inner {@code Task} without blocking any thread, on the thread
+     * completing the inner {@code Task}; continuations of the proxy run on their own executors.
+     *
+     * @return the {@code Task<T>}
      */
-    @Override
-    public T get() throws InterruptedException, ExecutionException
+    @SuppressWarnings("unchecked")
+    public T unwrap()
     {
-        _blnIsResultRead = true;
-        
-        return super.get();
+        Task<Object> proxy = new Task<Object>(plugin, plugin.getTaskFactory().defaultExecutor, this._id);
+
+        addContinuation(new Unwrap(this, proxy));
+
+        return (T) proxy;
     }
-    
+
     /**
-     * Gets the raw result from this {@code Task} if this {@code Task} has finished
-     * or null if there is no result.
+     * Unwraps this {@code Task} if the result type is a {@code Task<Task<T>>}.
      *
-     * @return the raw
+     * @param executor ignored, the proxy no longer runs anything on an executor
+     * @return the {@code Task<T>}
+     * @deprecated use {@link #unwrap()}; continuations of the proxy choose their own executor
      */
-    public T getRaw()
+    @Deprecated
+    public T unwrap(Executor executor)
     {
-    	
-    	if (this.isDone())
-    	{
-    		try {
-				return this.get();
-			} 
-    		catch (Exception e)
-			{
-			}
-    	}
-    
-    	return null;
+        return unwrap();
     }
 
     /**
-     * Unwraps this {@code Task} if the result type is a {@code Task<Task<T>>}.
+     * Creates an {@link Observable} that emits the result of this {@code Task} and completes, or emits
+     * its exception. A cancelled {@code Task} emits a {@link CancellationException}. Each subscription
+     * registers a continuation that is removed again if the subscriber unsubscribes early.
      *
-     * @return the {@code Task<T>}
+     * @return the observable
      */
-    public T unwrap()
+    public Observable<T> toObservable()
     {
+        return toObservable(false);
+    }
 
-        return this.continueWithInternal(new TaskFunc<Task<T>, T>() {
+    /**
+     * Creates an {@link Observable} that emits the result of this {@code Task} and completes, or emits
+     * its exception. A cancelled {@code Task} emits a {@link CancellationException}.
+     *
+     * @param cancelOnUnsubscribe true, to cancel this {@code Task} if a subscriber unsubscribes before it completes
+     * @return the observable
+     */
+    public Observable<T> toObservable(final boolean cancelOnUnsubscribe)
+    {
+        return Observable.create(new Observable.OnSubscribe<T>()
+        {
             @Override
-            public T call(Task<Task<T>> task) throws ExecutionException, InterruptedException {
-                return task.get().get();
+            public void call(final Subscriber<? super T> subscriber)
+            {
+                final ITaskStart continuation = new ITaskStart()
+                {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public void start()
+                    {
+                        Outcome outcome = (Outcome) _state;
+
+                        _blnIsResultRead = true;
+
+                        if (outcome.cancelled)
+                        {
+                            subscriber.onError(new CancellationException());
+                        }
+                        else if (outcome.exception != null)
+                        {
+                            subscriber.onError(outcome.exception);
+                        }
+                        else
+                        {
+                            subscriber.onNext((T) outcome.value);
+                            subscriber.onCompleted();
+                        }
+                    }
+                };
+
+                subscriber.add(Subscriptions.create(new Action0()
+                {
+                    @Override
+                    public void call()
+                    {
+                        if (removeContinuation(continuation) && cancelOnUnsubscribe)
+                        {
+                            cancel(false);
+                        }
+                    }
+                }));
+
+                addContinuation(continuation);
             }
         });
     }
-    
+
     /**
-     * Unwraps this {@code Task} if the result type is a {@code Task<Task<T>>}.
+     * Creates a {@code Task} that completes with the outcome of this {@code Task}, or fails with a
+     * {@link TimeoutException} if this {@code Task} has not completed within the given number of ticks.
+     * The timeout is kept by the shared {@link TickTimer} of the {@link TaskFactory}, so no thread blocks.
+     * This {@code Task} itself is not cancelled on timeout.
      *
-     * @param executor the executor
-     * @return the {@code Task<T>}
+     * @param ticks the timeout in server ticks
+     * @return the task
      */
-    public T unwrap(Executor executor)
+    public Task<T> withTimeout(long ticks)
     {
+        final Task<T> proxy = new Task<T>(plugin, _executor, this._id);
+
+        if (isDone())
+        {
+            proxy.complete((Outcome) _state);
+            return proxy;
+        }
+
+        final ITaskStart continuation = new ITaskStart()
+        {
+            @Override
+            public void start()
+            {
+                _blnIsResultRead = true;
+                proxy.complete((Outcome) _state);
+            }
+        };
+
+        addContinuation(continuation);
+
+        final Subscription timeout = plugin.getTaskFactory().getTimer().schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (removeContinuation(continuation))
+                {
+                    proxy.setException(new TimeoutException("The task has not completed within the timeout."));
+                }
+            }
+        }, ticks);
 
-        return this.continueWithInternal(new TaskFunc<Task<T>, T>()
+        proxy.addContinuation(new ITaskStart()
         {
             @Override
-            public T call(Task<Task<T>> task) throws ExecutionException, InterruptedException
+            public void start()
             {
-                return task.get().get();
+                timeout.unsubscribe();
             }
-        }, executor);
+        });
+
+        return proxy;
     }
-    
+
+    /**
+     * Creates a {@code Task} that completes with the outcome of this {@code Task}, or fails with a
+     * {@link TimeoutException} if this {@code Task} has not completed within the given duration,
+     * rounded up to whole server ticks.
+     *
+     * @param timeout the timeout
+     * @param unit the unit of the timeout
+     * @return the task
+     */
+    public Task<T> withTimeout(long timeout, TimeUnit unit)
+    {
+        return withTimeout(TickTimer.toTicks(timeout, unit));
+    }
+
     /**
      * To void.
      *
@@ -544,22 +1794,7 @@ public class Task<T> extends FutureTask<T> implements ITask<T>, ITaskStart
      */
     private <VNew> Task<VNew> continueWith(Task<VNew> task)
     {
-        boolean blnIsDone;
-
-        synchronized (_newTaskList)
-        {
-            blnIsDone = _blnIsDone;
-
-            if (!blnIsDone)
-            {
-                _newTaskList.add(task);
-            }
-        }
-
-        if (blnIsDone)
-        {
-            task.start();
-        }
+        addContinuation(task);
 
         return task;
     }
@@ -574,9 +1809,7 @@ public class Task<T> extends FutureTask<T> implements ITask<T>, ITaskStart
     public <VNew> Task<VNew> continueWith(TaskFunc<T, VNew> taskFunc)
     {
 
-        Task<VNew> newTask = new Task<VNew>(plugin, createCallable(this, taskFunc), this._id);
-
-        return continueWith(newTask);
+        return continueWith(taskFunc, plugin.getTaskFactory().defaultExecutor);
     }
 
     /**
@@ -590,129 +1823,114 @@ public class Task<T> extends FutureTask<T> implements ITask<T>, ITaskStart
     public <VNew> Task<VNew> continueWith(TaskFunc<T, VNew> taskFunc, Executor executor)
     {
 
-        Task<VNew> newTask = new Task<VNew>(plugin, createCallable(this, taskFunc), executor, this._id);
+        Task<VNew> newTask = new Task<VNew>(plugin, this, taskFunc, executor, this._id, 0);
 
         return continueWith(newTask);
     }
    
     /**
-     * Mark as readed.
-     */
-    private void markAsRead()
-    {
-        try
-        {
-            this.get();
-        }
-        catch (Exception e)
-        {
-        }
-    }
-    
-    /**
-     * Continue with internal.
+     * Defines a {@link TaskFunc} for continuation after this {@code Task} has finished. The continuation
+     * is cancelled instead of started once cancellation of the token has been requested.
      *
-     * @param taskFunc the callable task
-     * @return the v
+     * @param <VNew> the generic type
+     * @param taskFunc the callable task for continuation
+     * @param token the cancellation token
+     * @return the task
      */
-    @SuppressWarnings("unchecked")
-    private T continueWithInternal(TaskFunc<Task<T>, T> taskFunc)
+    public <VNew> Task<VNew> continueWith(TaskFunc<T, VNew> taskFunc, CancellationToken token)
     {
-        Task<T> newTask = new Task<T>(plugin, createCallable((Task<Task<T>>) this, taskFunc), this._id);
-
-        return (T) continueWith(newTask);
+        return continueWith(taskFunc, plugin.getTaskFactory().defaultExecutor, token);
     }
 
     /**
-     * Continue with internal.
+     * Defines a {@link TaskFunc} for continuation after this {@code Task} has finished. The continuation
+     * is cancelled instead of started once cancellation of the token has been requested.
      *
-     * @param taskFunc the callable task
+     * @param <VNew> the generic type
+     * @param taskFunc the callable task for continuation
      * @param executor the executor
-     * @return the v
+     * @param token the cancellation token
+     * @return the task
      */
-    @SuppressWarnings("unchecked")
-    private T continueWithInternal(TaskFunc<Task<T>, T> taskFunc, Executor executor)
+    public <VNew> Task<VNew> continueWith(TaskFunc<T, VNew> taskFunc, Executor executor, CancellationToken token)
     {
-        Task<T> newTask = new Task<T>(plugin, createCallable((Task<Task<T>>) this, taskFunc), executor, this._id);
+        Task<VNew> newTask = new Task<VNew>(plugin, this, taskFunc, executor, this._id, 0);
+
+        newTask.attach(token);
 
-        return (T) continueWith(newTask);
+        return continueWith(newTask);
     }
 
     /**
-     * Creates the callable.
+     * Attaches a cancellation token to this {@code Task}, which is cancelled as soon as cancellation
+     * is requested. The registration is withdrawn once this {@code Task} has completed.
      *
-     * @param <VNew> the generic type
-     * @param <V> the value type
-     * @param task the task
-     * @param taskFunc the callable task
-     * @return the callable
+     * @param token the cancellation token
      */
-    private <VNew, V> Callable<VNew> createCallable(final Task<V> task, final TaskFunc<V, VNew> taskFunc)
+    void attach(CancellationToken token)
     {
-        return new Callable<VNew>()
+        _token = token;
+
+        final Subscription registration = token.register(new Action0()
         {
-            public VNew call() throws Exception
+            @Override
+            public void call()
             {
-                VNew result = taskFunc.call(task);
-                
-                if (! task._blnIsResultRead)
-                {
-                    if (plugin.getTaskFactory().unhandledExceptions != null)
-                    {
-                    	TaskException ex = new TaskResultException("The task result has not been read within the ContinueWith method.", task);
-                    	
-                        plugin.getTaskFactory().unhandledExceptions.call(ex);
-                    }
-                }
-                
-                return result;
+                cancel(false);
             }
-        };
+        });
+
+        addContinuation(new ITaskStart()
+        {
+            @Override
+            public void start()
+            {
+                registration.unsubscribe();
+            }
+        });
     }
 
     /**
-     * Checks if is faulted.
+     * Defines a {@link TaskFunc} for continuation after this {@code Task} has finished, subject to the given
+     * options. A continuation that is not eligible for the outcome of this {@code Task} is cancelled without
+     * being scheduled.
      *
-     * @return true, if is faulted
+     * @param <VNew> the generic type
+     * @param taskFunc the callable task for continuation
+     * @param options the continuation options
+     * @return the task
      */
-    public boolean isFaulted()
+    public <VNew> Task<VNew> continueWith(TaskFunc<T, VNew> taskFunc, TaskContinuationOptions... options)
     {
-    	boolean isFaulted = false;
-    	
-        if (isDone())
-        {
-            try
-            {
-                this.get();
-            }
-            catch (Exception e)
-            {
-                isFaulted = true;
-            } 
-        }
-        
-        return isFaulted;
+        return continueWith(taskFunc, plugin.getTaskFactory().defaultExecutor, options);
     }
-    
-    /* (non-Javadoc)
-     * @see java.util.concurrent.FutureTask#done()
+
+    /**
+     * Defines a {@link TaskFunc} for continuation after this {@code Task} has finished, subject to the given
+     * options. A continuation that is not eligible for the outcome of this {@code Task} is cancelled without
+     * being scheduled.
+     *
+     * @param <VNew> the generic type
+     * @param taskFunc the callable task for continuation
+     * @param executor the executor
+     * @param options the continuation options
+     * @return the task
      */
-    @Override
-    protected void done()
+    public <VNew> Task<VNew> continueWith(TaskFunc<T, VNew> taskFunc, Executor executor, TaskContinuationOptions... options)
     {
-        super.done();
+        Task<VNew> newTask = new Task<VNew>(plugin, this, taskFunc, executor, this._id, TaskContinuationOptions.toMask(options));
 
-        synchronized (_newTaskList)
-        {
-            _blnIsDone = true;
-
-            for (ITaskStart task : _newTaskList)
-            {
-                task.start();
-            }
+        return continueWith(newTask);
+    }
 
-            _newTaskList.clear();
-        }
+    /**
+     * Checks if is faulted.
+     *
+     * @return true, if is faulted
+     */
+    public boolean isFaulted()
+    {
+        return getStatus() == TaskStatus.Faulted;
     }
     
     /* (non-Javadoc)
@@ -729,47 +1947,34 @@ public class Task<T> extends FutureTask<T> implements ITask<T>, ITaskStart
         }
         
         StringBuilder stb = new StringBuilder();
-        
-        if (isFaulted())
+        Object state = _state;
+
+        switch (statusOf(state))
         {
-            try
-            {
-                this.get();        
-            }
-            catch(Exception e)
-            {
+            case Faulted:
                 stb.append("Task {status: is faulted, id: ");
                 stb.append(id);
                 stb.append(", exception: ");
-                stb.append(e.toString()); 
+                stb.append(((Outcome) state).exception.toString()); 
                 stb.append("}");
-            }
-        }
-        else if (isDone())
-        {
-            try
-            {
+                break;
+            case Succeeded:
                 stb.append("Task {status: is done, id: ");
                 stb.append(id);
                 stb.append(", value: ");
-                stb.append(this.get().toString()); 
+                stb.append(String.valueOf(((Outcome) state).value)); 
                 stb.append("}");
-            }
-            catch(Exception e)
-            {
-            }
-        }
-        else if (isCancelled())
-        {
-            stb.append("Task {status: is cancelled, id: ");
-            stb.append(id);
-            stb.append("}");
-        }
-        else
-        {
-            stb.append("Task {status: is running, id: ");
-            stb.append(id);
-            stb.append("}");
+                break;
+            case Canceled:
+                stb.append("Task {status: is cancelled, id: ");
+                stb.append(id);
+                stb.append("}");
+                break;
+            default:
+                stb.append("Task {status: is running, id: ");
+                stb.append(id);
+                stb.append("}");
+                break;
         }
         
         return stb.toString();
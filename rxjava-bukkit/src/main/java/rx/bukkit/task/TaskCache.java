@@ -0,0 +1,595 @@
+/*
+ *  Copyright (c) 2014 Ryan Michela.
+ *
+ *  Filename: TaskCache.java
+ */
+package rx.bukkit.task;
+
+import rx.bukkit.RxJavaPlugin;
+import rx.functions.Func1;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p> The {@code TaskCache} is a loading cache whose lookups return {@link Task}s. A missing key is loaded on
+ * the executor of the cache, and every lookup of the key made while the load is in flight shares its
+ * {@code Task}, so a burst of lookups results in a single load; cancelling that {@code Task} cancels it for every
+ * caller sharing it. Failed or cancelled loads are not cached.
+ *
+ * <p> Entries are evicted in least recently used order once the maximum size is exceeded, and lazily once they
+ * have expired after write or after access. An entry older than the refresh interval is reloaded in the
+ * background on its next lookup, while lookups keep getting the current value until the reload has completed.
+ *
+ * <p> The cache is thread-safe. Its lock is only held to update the entries, never while loading.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class TaskCache<K, V>
+{
+    /**
+     * A cached or loading entry. A refresh swaps its task in place, so the entry keeps its place in the
+     * access order.
+     */
+    private static final class Entry<V>
+    {
+        volatile Task<V> task;
+        volatile long written;
+        volatile long accessed;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(Task<V> task, long now)
+        {
+            this.task = task;
+            this.accessed = now;
+        }
+    }
+
+    /**
+     * A snapshot of the statistics of a {@code TaskCache}.
+     */
+    public static final class Stats
+    {
+        private final long _hits;
+        private final long _misses;
+        private final long _loadSuccesses;
+        private final long _loadFailures;
+        private final long _evictions;
+
+        Stats(long hits, long misses, long loadSuccesses, long loadFailures, long evictions)
+        {
+            _hits = hits;
+            _misses = misses;
+            _loadSuccesses = loadSuccesses;
+            _loadFailures = loadFailures;
+            _evictions = evictions;
+        }
+
+        /**
+         * Gets the number of lookups answered by a cached or loading entry.
+         *
+         * @return the hit count
+         */
+        public long getHits()
+        {
+            return _hits;
+        }
+
+        /**
+         * Gets the number of lookups that started a load.
+         *
+         * @return the miss count
+         */
+        public long getMisses()
+        {
+            return _misses;
+        }
+
+        /**
+         * Gets the ratio of hits to lookups.
+         *
+         * @return the hit rate, or 1 if there were no lookups
+         */
+        public double getHitRate()
+        {
+            long lookups = _hits + _misses;
+
+            return lookups == 0 ? 1.0 : (double) _hits / lookups;
+        }
+
+        /**
+         * Gets the number of loads and refreshes that succeeded.
+         *
+         * @return the count
+         */
+        public long getLoadSuccesses()
+        {
+            return _loadSuccesses;
+        }
+
+        /**
+         * Gets the number of loads and refreshes that failed.
+         *
+         * @return the count
+         */
+        public long getLoadFailures()
+        {
+            return _loadFailures;
+        }
+
+        /**
+         * Gets the number of entries evicted by size or expiry.
+         *
+         * @return the count
+         */
+        public long getEvictions()
+        {
+            return _evictions;
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString()
+        {
+            return String.format("hits=%d misses=%d hitRate=%.2f loads=%d failures=%d evictions=%d",
+                    _hits, _misses, getHitRate(), _loadSuccesses, _loadFailures, _evictions);
+        }
+    }
+
+    /** The _plugin. */
+    private final RxJavaPlugin _plugin;
+
+    /** The _loader. */
+    private final Func1<? super K, ? extends V> _loader;
+
+    /** The _executor the loader is called on. */
+    private final Executor _executor;
+
+    /** The _entries in access order, guarded by itself. */
+    private final LinkedHashMap<K, Entry<V>> _entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+
+    /** The _index of the entries by key, for the lookups that must not count as an access, guarded by _entries. */
+    private final HashMap<K, Entry<V>> _index = new HashMap<K, Entry<V>>();
+
+    /** The _maximum size. */
+    private volatile long _maximumSize = Long.MAX_VALUE;
+
+    /** The _expire after write nanos, or 0. */
+    private volatile long _expireAfterWriteNanos;
+
+    /** The _expire after access nanos, or 0. */
+    private volatile long _expireAfterAccessNanos;
+
+    /** The _refresh after write nanos, or 0. */
+    private volatile long _refreshAfterWriteNanos;
+
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+    private final AtomicLong _loadSuccesses = new AtomicLong();
+    private final AtomicLong _loadFailures = new AtomicLong();
+    private final AtomicLong _evictions = new AtomicLong();
+
+    /**
+     * Creates a {@code TaskCache}, see {@link TaskFactory#newCache}.
+     *
+     * @param loader the function loading the value of a key
+     * @param executor the executor to call the loader on
+     */
+    TaskCache(RxJavaPlugin plugin, Func1<? super K, ? extends V> loader, Executor executor)
+    {
+        if (loader == null || executor == null)
+        {
+            throw new NullPointerException();
+        }
+
+        _plugin = plugin;
+        _loader = loader;
+        _executor = executor;
+    }
+
+    /**
+     * Limits the number of entries, evicting the least recently used ones.
+     *
+     * @param maximumSize the maximum size
+     * @return this cache
+     */
+    public TaskCache<K, V> maximumSize(long maximumSize)
+    {
+        if (maximumSize < 0)
+        {
+            throw new IllegalArgumentException("The maximumSize argument cannot be negative.");
+        }
+
+        _maximumSize = maximumSize;
+        evictOverflow();
+
+        return this;
+    }
+
+    /**
+     * Expires entries once the given duration has passed since they were loaded.
+     *
+     * @param duration the duration, or 0 to never expire
+     * @param unit the unit of the duration
+     * @return this cache
+     */
+    public TaskCache<K, V> expireAfterWrite(long duration, TimeUnit unit)
+    {
+        _expireAfterWriteNanos = unit.toNanos(duration);
+
+        return this;
+    }
+
+    /**
+     * Expires entries once the given duration has passed since they were last looked up.
+     *
+     * @param duration the duration, or 0 to never expire
+     * @param unit the unit of the duration
+     * @return this cache
+     */
+    public TaskCache<K, V> expireAfterAccess(long duration, TimeUnit unit)
+    {
+        _expireAfterAccessNanos = unit.toNanos(duration);
+
+        return this;
+    }
+
+    /**
+     * Reloads entries in the background on their first lookup once the given duration has passed since they
+     * were loaded. Should be shorter than the expiry after write, which otherwise wins.
+     *
+     * @param duration the duration, or 0 to never refresh
+     * @param unit the unit of the duration
+     * @return this cache
+     */
+    public TaskCache<K, V> refreshAfterWrite(long duration, TimeUnit unit)
+    {
+        _refreshAfterWriteNanos = unit.toNanos(duration);
+
+        return this;
+    }
+
+    /**
+     * Gets the {@code Task} of the value of the key, loading it if it is neither cached nor loading.
+     *
+     * @param key the key
+     * @return the task
+     */
+    public Task<V> get(K key)
+    {
+        long now = System.nanoTime();
+        Entry<V> entry;
+        Entry<V> expired = null;
+        boolean load = false;
+
+        synchronized (_entries)
+        {
+            entry = _entries.get(key);
+
+            if (entry != null && entry.task.isDone() && (!entry.task.isCompletedSuccessfully() || isExpired(entry, now)))
+            {
+                _entries.remove(key);
+                _index.remove(key);
+                expired = entry;
+                entry = null;
+            }
+
+            if (entry == null)
+            {
+                entry = new Entry<V>(new Task<V>(_plugin, _plugin.getTaskFactory().defaultExecutor, ""), now);
+                _entries.put(key, entry);
+                _index.put(key, entry);
+                load = true;
+            }
+        }
+
+        if (expired != null && expired.task.isCompletedSuccessfully())
+        {
+            _evictions.incrementAndGet();
+        }
+
+        if (load)
+        {
+            _misses.incrementAndGet();
+            evictOverflow();
+            load(key, entry);
+
+            return entry.task;
+        }
+
+        _hits.incrementAndGet();
+        entry.accessed = now;
+
+        long refresh = _refreshAfterWriteNanos;
+
+        if (refresh > 0 && entry.written != 0 && now - entry.written >= refresh && entry.refreshing.compareAndSet(false, true))
+        {
+            refresh(key, entry);
+        }
+
+        return entry.task;
+    }
+
+    /**
+     * Gets the cached value of the key without loading it.
+     *
+     * @param key the key
+     * @return the value, or null if it is not cached or still loading
+     */
+    public V getIfPresent(K key)
+    {
+        Entry<V> entry;
+
+        synchronized (_entries)
+        {
+            entry = _entries.get(key);
+        }
+
+        if (entry == null || !entry.task.isCompletedSuccessfully() || isExpired(entry, System.nanoTime()))
+        {
+            return null;
+        }
+
+        return entry.task.getRaw();
+    }
+
+    /**
+     * Caches a value, replacing any cached or loading entry of the key. Lookups that already got the
+     * {@code Task} of a replaced load still get its result.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public void put(K key, V value)
+    {
+        long now = System.nanoTime();
+        Task<V> task = new Task<V>(_plugin, _plugin.getTaskFactory().defaultExecutor, "", new Task.Outcome(value, null, false));
+        Entry<V> entry = new Entry<V>(task, now);
+        entry.written = now;
+
+        synchronized (_entries)
+        {
+            _entries.put(key, entry);
+            _index.put(key, entry);
+        }
+
+        evictOverflow();
+    }
+
+    /**
+     * Discards the entry of the key. A load in flight still completes the {@code Task}s already handed out,
+     * but its value is not cached.
+     *
+     * @param key the key
+     */
+    public void invalidate(K key)
+    {
+        synchronized (_entries)
+        {
+            _entries.remove(key);
+            _index.remove(key);
+        }
+    }
+
+    /**
+     * Discards all entries.
+     */
+    public void invalidateAll()
+    {
+        synchronized (_entries)
+        {
+            _entries.clear();
+            _index.clear();
+        }
+    }
+
+    /**
+     * Discards all expired entries. Expired entries are otherwise only discarded when they are looked up
+     * or pushed out by the maximum size.
+     */
+    public void cleanUp()
+    {
+        long now = System.nanoTime();
+        int evicted = 0;
+
+        synchronized (_entries)
+        {
+            for (Iterator<Map.Entry<K, Entry<V>>> it = _entries.entrySet().iterator(); it.hasNext(); )
+            {
+                Map.Entry<K, Entry<V>> mapping = it.next();
+                Entry<V> entry = mapping.getValue();
+
+                if (entry.task.isCompletedSuccessfully() && isExpired(entry, now))
+                {
+                    it.remove();
+                    _index.remove(mapping.getKey());
+                    evicted++;
+                }
+            }
+        }
+
+        _evictions.addAndGet(evicted);
+    }
+
+    /**
+     * Gets the number of entries, including loading ones.
+     *
+     * @return the size
+     */
+    public int size()
+    {
+        synchronized (_entries)
+        {
+            return _entries.size();
+        }
+    }
+
+    /**
+     * Gets a snapshot of the statistics.
+     *
+     * @return the stats
+     */
+    public Stats getStats()
+    {
+        return new Stats(_hits.get(), _misses.get(), _loadSuccesses.get(), _loadFailures.get(), _evictions.get());
+    }
+
+    private boolean isExpired(Entry<V> entry, long now)
+    {
+        long afterWrite = _expireAfterWriteNanos;
+        long afterAccess = _expireAfterAccessNanos;
+
+        return (afterWrite > 0 && entry.written != 0 && now - entry.written >= afterWrite)
+                || (afterAccess > 0 && now - entry.accessed >= afterAccess);
+    }
+
+    /**
+     * Evicts the least recently used entries exceeding the maximum size.
+     */
+    private void evictOverflow()
+    {
+        int evicted = 0;
+
+        synchronized (_entries)
+        {
+            long maximumSize = _maximumSize;
+
+            for (Iterator<K> it = _entries.keySet().iterator(); _entries.size() > maximumSize && it.hasNext(); )
+            {
+                _index.remove(it.next());
+                it.remove();
+                evicted++;
+            }
+        }
+
+        _evictions.addAndGet(evicted);
+    }
+
+    /**
+     * Loads the value of a new entry and completes its {@code Task}. A failed load is discarded, so the next
+     * lookup tries again; so is a load the executor rejects, whose {@code Task} fails with the rejection.
+     *
+     * @param key the key
+     * @param entry the entry
+     */
+    private void load(final K key, final Entry<V> entry)
+    {
+        Runnable load = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (entry.task.isDone())
+                {
+                    return;
+                }
+
+                V value;
+
+                try
+                {
+                    value = _loader.call(key);
+                }
+                catch (Throwable t)
+                {
+                    _loadFailures.incrementAndGet();
+                    remove(key, entry);
+                    entry.task.setException(t);
+                    return;
+                }
+
+                _loadSuccesses.incrementAndGet();
+                entry.written = System.nanoTime();
+                entry.task.set(value);
+            }
+        };
+
+        try
+        {
+            _executor.execute(load);
+        }
+        catch (RuntimeException e)
+        {
+            _loadFailures.incrementAndGet();
+            remove(key, entry);
+            entry.task.setException(e);
+        }
+    }
+
+    /**
+     * Reloads the value of an entry and updates the entry on success, unless it has been replaced or
+     * discarded meanwhile. A failed or rejected reload keeps the entry, and the next lookup tries again.
+     *
+     * @param key the key
+     * @param entry the entry
+     */
+    private void refresh(final K key, final Entry<V> entry)
+    {
+        Runnable refresh = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                V value;
+
+                try
+                {
+                    value = _loader.call(key);
+                }
+                catch (Throwable t)
+                {
+                    _loadFailures.incrementAndGet();
+                    entry.refreshing.set(false);
+                    return;
+                }
+
+                _loadSuccesses.incrementAndGet();
+
+                Task<V> task = new Task<V>(_plugin, _plugin.getTaskFactory().defaultExecutor, "", new Task.Outcome(value, null, false));
+
+                synchronized (_entries)
+                {
+                    // updated in place, as a reload is no access and must keep the entry where it is in the LRU order
+                    if (_index.get(key) == entry)
+                    {
+                        entry.task = task;
+                        entry.written = System.nanoTime();
+                    }
+
+                    entry.refreshing.set(false);
+                }
+            }
+        };
+
+        try
+        {
+            _executor.execute(refresh);
+        }
+        catch (RuntimeException e)
+        {
+            _loadFailures.incrementAndGet();
+            entry.refreshing.set(false);
+        }
+    }
+
+    private void remove(K key, Entry<V> entry)
+    {
+        synchronized (_entries)
+        {
+            if (_index.get(key) == entry)
+            {
+                _entries.remove(key);
+                _index.remove(key);
+            }
+        }
+    }
+}
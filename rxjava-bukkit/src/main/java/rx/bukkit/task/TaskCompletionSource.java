@@ -1,92 +1,246 @@
 /*
  *  Copyright (c) 2014 Andree Hagelstein, Maik Schulze, Deutsche Telekom AG. All Rights Reserved.
- *  
+ *  Copyright (c) 2014 Ryan Michela.
+ *
  *  Filename: TaskCompletionSource.java
  */
 package rx.bukkit.task;
 
+import rx.bukkit.ErrorReporter;
+import rx.bukkit.RxJavaPlugin;
 import rx.functions.Action1;
 
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.logging.Logger;
+
 /**
- * The {@code TaskCompletionSource} represents the producer side of a {@link Task}.
+ * <p> The {@code TaskCompletionSource} represents the producer side of a {@link Task}.
+ *
+ * <p> The source may be completed from any thread, and only the first completion counts: the result, which may
+ * be {@code null}, or the exception is assigned by a single compare-and-set. The {@link Task} of the source,
+ * created by the first call of {@link TaskFactory#fromSource}, shares the outcome and is completed directly.
+ * Any number of listeners may be added before or after completion; each listener is called exactly once,
+ * either by the completing thread or, if the source has already completed, by the thread adding it.
  *
  * @param <V> the value type
  */
 public class TaskCompletionSource<V> {
 
-    /** The _set callback. */
-    private Action1<V> _setCallback;
-    
-    /** The _exception callback. */
-    private Action1<Throwable> _exceptionCallback;
-    
-    /** The result value. */
-    private V resultValue;
-    
-    /** The result throwable. */
-    private Throwable resultThrowable;
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<TaskCompletionSource, Object> STATE =
+            AtomicReferenceFieldUpdater.newUpdater(TaskCompletionSource.class, Object.class, "_state");
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<TaskCompletionSource, Task> TASK =
+            AtomicReferenceFieldUpdater.newUpdater(TaskCompletionSource.class, Task.class, "_task");
+
+    /**
+     * A registered listener and the listeners registered before it.
+     */
+    private static final class Listener<V>
+    {
+        final Action1<? super V> onSet;
+        final Action1<Throwable> onException;
+        final Listener<V> next;
+
+        Listener(Action1<? super V> onSet, Action1<Throwable> onException, Listener<V> next)
+        {
+            this.onSet = onSet;
+            this.onException = onException;
+            this.next = next;
+        }
+    }
+
+    /** Holds the most recently registered {@link Listener} while pending, and the final {@link Task.Outcome} once completed. */
+    private volatile Object _state;
+
+    /** The task of the source, or null until {@link TaskFactory#fromSource} is first called. */
+    private volatile Task<V> _task;
 
     /**
-     * Sets the result value of the attached {@link Task}.
+     * Sets the result value of the attached {@link Task}s, unless the source has already been completed.
      *
      * @param result the result
      */
     public void set(V result) {
 
-        if (_setCallback != null)
-        {
-        	_setCallback.call(result);
-        }
-        else
-        {
-        	resultValue = result;
-        }
+        trySet(result);
     }
 
     /**
-     * Sets the result of the attached {@link Task}.
+     * Sets the exception of the attached {@link Task}s, unless the source has already been completed.
      *
      * @param t the new exception
      */
     public void setException(Throwable t) {
 
-        if (_exceptionCallback != null)
+        trySetException(t);
+    }
+
+    /**
+     * Sets the result value of the attached {@link Task}s.
+     *
+     * @param result the result
+     * @return true, if this call completed the source
+     */
+    public boolean trySet(V result) {
+
+        return complete(new Task.Outcome(result, null, false));
+    }
+
+    /**
+     * Sets the exception of the attached {@link Task}s.
+     *
+     * @param t the new exception
+     * @return true, if this call completed the source
+     */
+    public boolean trySetException(Throwable t) {
+
+        if (t == null)
         {
-        	_exceptionCallback.call(t);
+            throw new NullPointerException();
         }
-        else
+
+        return complete(new Task.Outcome(null, t, false));
+    }
+
+    /**
+     * Checks if the source has been completed.
+     *
+     * @return true, if the source has been completed
+     */
+    public boolean isDone() {
+
+        return _state instanceof Task.Outcome;
+    }
+
+    /**
+     * Gets the task of the source, creating it on the first call. The task is completed by the completion of the
+     * source without a listener of its own, and with the same outcome.
+     *
+     * @param plugin the plugin the task is created for
+     * @return the task
+     */
+    Task<V> getTask(RxJavaPlugin plugin) {
+
+        Task<V> task = _task;
+
+        if (task != null)
+        {
+            return task;
+        }
+
+        task = new Task<V>(plugin, plugin.getTaskFactory().defaultExecutor, "");
+
+        if (!TASK.compareAndSet(this, null, task))
+        {
+            return _task;
+        }
+
+        // completed before the task was published, complete() may or may not have seen it
+        Object state = _state;
+
+        if (state instanceof Task.Outcome)
         {
-        	resultThrowable = t;
+            task.complete((Task.Outcome) state);
         }
+
+        return task;
     }
 
     /**
-     * Sets the set callback.
+     * Adds a listener that is called once the source has been completed, or right away if it already has.
      *
-     * @param callback the callback
+     * @param onSet the callback receiving the result
+     * @param onException the callback receiving the exception
      */
-    void setSetCallback(Action1<V> callback)
-    {
-        _setCallback = callback;
-        
-        if (resultValue != null)
+    @SuppressWarnings("unchecked")
+    public void addListener(Action1<? super V> onSet, Action1<Throwable> onException) {
+
+        if (onSet == null || onException == null)
         {
-        	_setCallback.call(resultValue);
+            throw new NullPointerException();
         }
+
+        Object state;
+
+        do
+        {
+            state = _state;
+
+            if (state instanceof Task.Outcome)
+            {
+                notify(onSet, onException, (Task.Outcome) state);
+                return;
+            }
+        }
+        while (!STATE.compareAndSet(this, state, new Listener<V>(onSet, onException, (Listener<V>) state)));
     }
 
     /**
-     * Sets the exception callback.
+     * Assigns the outcome, completes the task and calls the listeners in the order they were added. A listener
+     * that throws neither keeps the remaining listeners from being called nor fails the completing call; its
+     * exception is reported with the {@link ErrorReporter}.
      *
-     * @param callback the callback
+     * @param outcome the outcome
+     * @return true, if this call completed the source
      */
-    void setExceptionCallback(Action1<Throwable> callback)
-    {
-        _exceptionCallback = callback;
-        
-        if (resultThrowable != null)
+    @SuppressWarnings("unchecked")
+    private boolean complete(Task.Outcome outcome) {
+
+        Object state;
+
+        do
+        {
+            state = _state;
+
+            if (state instanceof Task.Outcome)
+            {
+                return false;
+            }
+        }
+        while (!STATE.compareAndSet(this, state, outcome));
+
+        Task<V> task = _task;
+
+        if (task != null)
+        {
+            task.complete(outcome);
+        }
+
+        Listener<V> reversed = null;
+
+        for (Listener<V> l = (Listener<V>) state; l != null; l = l.next)
+        {
+            reversed = new Listener<V>(l.onSet, l.onException, reversed);
+        }
+
+        for (Listener<V> l = reversed; l != null; l = l.next)
+        {
+            try
+            {
+                notify(l.onSet, l.onException, outcome);
+            }
+            catch (Throwable t)
+            {
+                ErrorReporter.getInstance().report(Logger.getLogger(TaskCompletionSource.class.getName()),
+                        "Unhandled exception in a listener of a TaskCompletionSource", t);
+            }
+        }
+
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void notify(Action1<? super V> onSet, Action1<Throwable> onException, Task.Outcome outcome) {
+
+        if (outcome.exception != null)
+        {
+            onException.call(outcome.exception);
+        }
+        else
         {
-        	_exceptionCallback.call(resultThrowable);
+            onSet.call((V) outcome.value);
         }
     }
 }
@@ -0,0 +1,21 @@
+/*
+ *  Copyright (c) 2014 Ryan Michela.
+ *
+ *  Filename: TaskContinuationException.java
+ */
+package rx.bukkit.task;
+
+/**
+ * Reports a continuation that threw while being started, e.g. because its executor rejected it. The
+ * remaining continuations of the {@code Task} are started regardless.
+ */
+public class TaskContinuationException extends TaskException
+{
+    private static final long serialVersionUID = 1L;
+
+    public TaskContinuationException(String message, ITask<?> task, Throwable cause)
+    {
+        super(message, task);
+        initCause(cause);
+    }
+}
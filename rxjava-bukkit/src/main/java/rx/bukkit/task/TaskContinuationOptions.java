@@ -5,11 +5,62 @@
  */
 package rx.bukkit.task;
 
+/**
+ * The {@code TaskContinuationOptions} control when and how a continuation passed to
+ * {@link Task#continueWith(TaskFunc, TaskContinuationOptions...)} runs. A continuation whose
+ * condition does not hold for the antecedent {@link Task} is cancelled without being scheduled.
+ */
 public enum TaskContinuationOptions
 {
+    /** Run the continuation whatever the outcome of the antecedent. */
     None,
+    /** Skip the continuation if the antecedent has faulted. */
     NotOnFaulted,
+    /** Skip the continuation if the antecedent has been cancelled. */
     NotOnCanceled,
+    /** Run the continuation only if the antecedent has faulted. */
     OnlyOnFaulted,
-    OnlyOnCanceled
+    /** Run the continuation only if the antecedent has been cancelled. */
+    OnlyOnCanceled,
+    /** Skip the continuation if the antecedent has completed successfully. */
+    NotOnRanToCompletion,
+    /** Run the continuation only if the antecedent has completed successfully. */
+    OnlyOnRanToCompletion,
+    /** Run the continuation inline on the thread completing the antecedent instead of on its executor. */
+    ExecuteSynchronously;
+
+    /**
+     * Combines options into a bit mask.
+     *
+     * @param options the options
+     * @return the mask
+     */
+    static int toMask(TaskContinuationOptions... options)
+    {
+        int mask = 0;
+
+        if (options != null)
+        {
+            for (TaskContinuationOptions option : options)
+            {
+                if (option != None)
+                {
+                    mask |= option.bit();
+                }
+            }
+        }
+
+        return mask;
+    }
+
+    /**
+     * Gets the bit of this option. New options are appended, so the ordinals and bits of existing
+     * options never change.
+     *
+     * @return the bit
+     */
+    int bit()
+    {
+        return 1 << ordinal();
+    }
 }
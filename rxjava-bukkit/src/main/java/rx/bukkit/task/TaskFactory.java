@@ -5,16 +5,28 @@
  */
 package rx.bukkit.task;
 
+import rx.Observable;
+import rx.Subscription;
+import rx.bukkit.ErrorReporter;
 import rx.bukkit.RxJavaPlugin;
 import rx.bukkit.scheduler.BukkitRxScheduler;
+import rx.bukkit.scheduler.TickTimer;
 import rx.functions.Action1;
+import rx.functions.Func1;
+import rx.functions.Func2;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
-import java.util.logging.Level;
 
 /**
  * A factory for creating {@link Task} objects.
@@ -22,21 +34,78 @@ import java.util.logging.Level;
 public class TaskFactory {
     private RxJavaPlugin plugin;
 
+    /** The shared completed tasks for common results, see {@link #cachedResult}. */
+    private final Task<Object> nullResult;
+    private final Task<Boolean> trueResult;
+    private final Task<Boolean> falseResult;
+    private final Task<List<Object>> emptyListResult;
+    private final Task<Set<Object>> emptySetResult;
+    private final Task<Map<Object, Object>> emptyMapResult;
+
     public TaskFactory(RxJavaPlugin plugin) {
         this.plugin = plugin;
+        this.defaultExecutor = new BukkitRxScheduler(plugin, BukkitRxScheduler.ConcurrencyMode.SYNCHRONOUS);
+        this.backgroundExecutor = new BukkitRxScheduler(plugin, BukkitRxScheduler.ConcurrencyMode.ASYNCHRONOUS);
+        this.timer = new TickTimer(plugin);
+        this.tracer = new TaskTracer();
+
+        this.nullResult = completed(null);
+        this.trueResult = completed(Boolean.TRUE);
+        this.falseResult = completed(Boolean.FALSE);
+        this.emptyListResult = completed(Collections.emptyList());
+        this.emptySetResult = completed(Collections.emptySet());
+        this.emptyMapResult = completed(Collections.emptyMap());
+    }
+
+    private <V> Task<V> completed(V value) {
+        return new Task<V>(plugin, defaultExecutor, "", new Task.Outcome(value, null, false));
+    }
+
+    /**
+     * Returns the shared completed {@code Task} for {@code null}, {@code Boolean.TRUE}, {@code Boolean.FALSE}
+     * and the immutable empty collections of {@link Collections}, or null for any other value.
+     */
+    @SuppressWarnings("unchecked")
+    <V> Task<V> cachedResult(V value) {
+        Object task = null;
+
+        if (value == null) {
+            task = nullResult;
+        } else if (value == Boolean.TRUE) {
+            task = trueResult;
+        } else if (value == Boolean.FALSE) {
+            task = falseResult;
+        } else if (value == Collections.EMPTY_LIST) {
+            task = emptyListResult;
+        } else if (value == Collections.EMPTY_SET) {
+            task = emptySetResult;
+        } else if (value == Collections.EMPTY_MAP) {
+            task = emptyMapResult;
+        }
+
+        return (Task<V>) task;
     }
 
     /** The default executor service for the {@link Task}. */
-	public Executor defaultExecutor = new BukkitRxScheduler(plugin, BukkitRxScheduler.ConcurrencyMode.SYNCHRONOUS);
+	public Executor defaultExecutor;
 	
 	/** The background executor service. */
-	public Executor backgroundExecutor = new BukkitRxScheduler(plugin, BukkitRxScheduler.ConcurrencyMode.ASYNCHRONOUS);
+	public Executor backgroundExecutor;
+
+	/** The timer shared by timeouts and retry delays. */
+	private final TickTimer timer;
+
+	/** The tracer sampling the lifecycle of tasks, off by default. */
+	private final TaskTracer tracer;
+
+	/** The limited executors by resource name. */
+	private final ConcurrentMap<String, LimitedExecutor> limitedExecutors = new ConcurrentHashMap<>();
 
 	/** The callback function to retrieve exceptions from the {@link Task}. */
 	public Action1<TaskException> unhandledExceptions = new Action1<TaskException>() {
         @Override
         public void call(TaskException e) {
-            plugin.getLogger().log(Level.SEVERE, "Unhandled exception in Task " + e.getTask().getId(), e);
+            ErrorReporter.getInstance().report(plugin.getLogger(), "Unhandled exception in Task " + e.getTask().getId(), e);
         }
     };
 
@@ -98,8 +167,495 @@ public class TaskFactory {
         return task;
     }
 
+	/**
+	 * Creates and starts a new {@code Task} that is cancelled, and withdrawn from the Bukkit scheduler
+	 * if still queued, once cancellation of the token has been requested.
+	 *
+	 * @param <V> the value type
+	 * @param callable the callable
+	 * @param token the cancellation token
+	 * @return the task
+	 */
+	public <V> Task<V> startNew(Callable<V> callable, CancellationToken token) {
+
+	    return startNew(callable, defaultExecutor, token);
+	}
+
+	/**
+	 * Creates and starts a new {@code Task} that is cancelled, and withdrawn from the Bukkit scheduler
+	 * if still queued, once cancellation of the token has been requested.
+	 *
+	 * @param <V> the value type
+	 * @param callable the callable
+	 * @param executor the executor
+	 * @param token the cancellation token
+	 * @return the task
+	 */
+	public <V> Task<V> startNew(Callable<V> callable, Executor executor, CancellationToken token) {
+
+        Task<V> task = new Task<V>(plugin, callable, executor, "");
+        task.attach(token);
+        task.start();
+
+        return task;
+    }
+
+    /**
+     * Gets the timer shared by timeouts and retry delays of the {@link Task}s of this factory.
+     *
+     * @return the timer
+     */
+    public TickTimer getTimer() {
+        return timer;
+    }
+
+    /**
+     * Gets the tracer recording the lifecycle of the tasks of this factory. Tracing is off until a sample
+     * rate is set, e.g. {@code getTracer().setSampleRate(64)}.
+     *
+     * @return the tracer
+     */
+    public TaskTracer getTracer() {
+        return tracer;
+    }
+
+	/**
+	 * Gets the executor limiting the number of background runnables of the named resource, e.g.
+	 * {@code getLimitedExecutor("mysql", 10)}, creating it on first use. Pass it to {@link #startNew(Callable, Executor)}
+	 * or {@link Task#continueWith(TaskFunc, Executor)} for every task using the resource. Later calls with a
+	 * different limit change the limit of the shared executor.
+	 *
+	 * @param resource the name of the resource
+	 * @param limit the maximum number of runnables running at the same time
+	 * @return the executor
+	 */
+	public LimitedExecutor getLimitedExecutor(String resource, int limit) {
+
+	    LimitedExecutor executor = limitedExecutors.get(resource);
+
+	    if (executor == null) {
+	        LimitedExecutor created = new LimitedExecutor(resource, backgroundExecutor, limit);
+	        executor = limitedExecutors.putIfAbsent(resource, created);
+
+	        if (executor == null) {
+	            return created;
+	        }
+	    }
+
+	    if (executor.getLimit() != limit) {
+	        executor.setLimit(limit);
+	    }
+
+	    return executor;
+	}
+
+	/**
+	 * Creates and starts a new {@code Task} that calls the {@code Callable} on the background executor
+	 * and calls it again, after the delay defined by the policy, as long as it fails and the policy allows.
+	 *
+	 * @param <V> the value type
+	 * @param callable the callable
+	 * @param policy the retry policy
+	 * @return the task
+	 */
+	public <V> Task<V> retry(Callable<V> callable, RetryPolicy policy)
+	{
+		return retry(callable, backgroundExecutor, policy);
+	}
+
+	/**
+	 * Creates and starts a new {@code Task} that calls the {@code Callable} on the executor and calls it
+	 * again, after the delay defined by the policy, as long as it fails and the policy allows. Delays are
+	 * kept by the shared {@link TickTimer}, so no thread is blocked between attempts. Cancelling the
+	 * {@code Task} stops further attempts. If the plugin is disabled between attempts the {@code Task}
+	 * fails with the last failure. If the {@code retryOn} predicate of the policy throws, the {@code Task}
+	 * fails with its exception, to which the failure it was judging is added as suppressed.
+	 *
+	 * @param <V> the value type
+	 * @param callable the callable
+	 * @param executor the executor
+	 * @param policy the retry policy
+	 * @return the task
+	 */
+	public <V> Task<V> retry(final Callable<V> callable, final Executor executor, final RetryPolicy policy)
+	{
+		final Task<V> task = new Task<V>(plugin, defaultExecutor, "");
+
+		executor.execute(new Runnable()
+		{
+			private int attempt;
+
+			@Override
+			public void run()
+			{
+				if (task.isDone())
+				{
+					return;
+				}
+
+				attempt++;
+
+				try
+				{
+					task.set(callable.call());
+				}
+				catch (Throwable t)
+				{
+					boolean retry;
+
+					try
+					{
+						retry = policy.shouldRetry(attempt, t);
+					}
+					catch (Throwable e)
+					{
+						// a failing retryOn predicate ends the retry, with the failure it judged attached
+						e.addSuppressed(t);
+						task.setException(e);
+						return;
+					}
+
+					if (!retry)
+					{
+						task.setException(t);
+						return;
+					}
+
+					long delay = policy.delayTicks(attempt);
+
+					try
+					{
+						if (delay <= 0)
+						{
+							executor.execute(this);
+						}
+						else
+						{
+							timer.schedule(new RetryDelay(task, executor, this, t), delay);
+						}
+					}
+					catch (RuntimeException e)
+					{
+						// the plugin has been disabled, give up with the last failure
+						task.setException(t);
+					}
+				}
+			}
+		});
+
+		return task;
+	}
+
+	/**
+	 * Starts the next attempt of a retry once its delay has passed. If the timer drops the delay because the
+	 * plugin is disabled, the retry fails with the last failure instead of waiting forever.
+	 */
+	private static final class RetryDelay implements Runnable, Subscription
+	{
+		private final Task<?> task;
+		private final Executor executor;
+		private final Runnable next;
+		private final Throwable failure;
+
+		private RetryDelay(Task<?> task, Executor executor, Runnable next, Throwable failure)
+		{
+			this.task = task;
+			this.executor = executor;
+			this.next = next;
+			this.failure = failure;
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				executor.execute(next);
+			}
+			catch (RuntimeException e)
+			{
+				task.setException(failure);
+			}
+		}
+
+		@Override
+		public void unsubscribe()
+		{
+			task.setException(failure);
+		}
+
+		@Override
+		public boolean isUnsubscribed()
+		{
+			return task.isDone();
+		}
+	}
+
+    /**
+     * Calls the action for every index of the range on the background executor. A few workers take
+     * chunks of the range from a shared cursor until it runs out, so a single {@code Task} covers the
+     * whole range. The {@code Task} completes on the main thread once every index has been processed,
+     * or with the first exception thrown by the action.
+     *
+     * @param fromInclusive the first index
+     * @param toExclusive the end of the range
+     * @param action the action
+     * @return the task
+     */
+    public Task<Void> parallelFor(final int fromInclusive, int toExclusive, final IndexAction action) {
+
+        return new ParallelLoop<Void>(plugin, Math.max(0, toExclusive - fromInclusive)) {
+            @Override
+            Object runChunk(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    action.call(fromInclusive + i);
+                }
+                return null;
+            }
+
+            @Override
+            Void merge(List<Object> partials) {
+                return null;
+            }
+        }.start(backgroundExecutor);
+    }
+
+    /**
+     * Calls the action for every index of the range on the background executor, see
+     * {@link #parallelFor(int, int, IndexAction)}. Every index is boxed, so loops over large ranges should
+     * prefer the {@code IndexAction} overload.
+     *
+     * @param fromInclusive the first index
+     * @param toExclusive the end of the range
+     * @param action the action
+     * @return the task
+     */
+    public Task<Void> parallelFor(int fromInclusive, int toExclusive, final Action1<Integer> action) {
+
+        return parallelFor(fromInclusive, toExclusive, new IndexAction() {
+            @Override
+            public void call(int index) {
+                action.call(index);
+            }
+        });
+    }
+
+    /**
+     * Calls the action for every item of the collection on the background executor, see
+     * {@link #parallelFor(int, int, IndexAction)}. The items must not be modified until the {@code Task} is done.
+     *
+     * @param <V> the item type
+     * @param items the items
+     * @param action the action
+     * @return the task
+     */
+    public <V> Task<Void> parallelFor(Collection<? extends V> items, final Action1<? super V> action) {
+
+        final List<? extends V> list = randomAccess(items);
+
+        return new ParallelLoop<Void>(plugin, list.size()) {
+            @Override
+            Object runChunk(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    action.call(list.get(i));
+                }
+                return null;
+            }
+
+            @Override
+            Void merge(List<Object> partials) {
+                return null;
+            }
+        }.start(backgroundExecutor);
+    }
+
+    /**
+     * Maps every item of the collection on the background executor, see {@link #parallelFor(int, int, IndexAction)}.
+     * The results are written into a single array, so the resulting list keeps the order of the items without
+     * a {@code Task} per item.
+     *
+     * @param <V> the item type
+     * @param <R> the result type
+     * @param items the items
+     * @param mapper the mapping function
+     * @return the task
+     */
+    public <V, R> Task<List<R>> parallelMap(Collection<? extends V> items, final Func1<? super V, ? extends R> mapper) {
+
+        final List<? extends V> list = randomAccess(items);
+        final Object[] results = new Object[list.size()];
+
+        return new ParallelLoop<List<R>>(plugin, list.size()) {
+            @Override
+            Object runChunk(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    results[i] = mapper.call(list.get(i));
+                }
+                return null;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            List<R> merge(List<Object> partials) {
+                return (List<R>) Arrays.asList(results);
+            }
+        }.start(backgroundExecutor);
+    }
+
+    /**
+     * Reduces the items of the collection on the background executor, see {@link #parallelFor(int, int, IndexAction)}.
+     * Every chunk is folded with the accumulator starting from the identity, and the partial results are
+     * combined in the order of the items, so the combiner has to be associative but need not be commutative.
+     *
+     * @param <V> the item type
+     * @param <R> the result type
+     * @param items the items
+     * @param identity the initial value of every chunk
+     * @param accumulator folds an item into the partial result of a chunk
+     * @param combiner combines two partial results
+     * @return the task
+     */
+    public <V, R> Task<R> parallelReduce(Collection<? extends V> items, final R identity,
+                                         final Func2<R, ? super V, R> accumulator, final Func2<R, R, R> combiner) {
+
+        final List<? extends V> list = randomAccess(items);
+
+        return new ParallelLoop<R>(plugin, list.size()) {
+            @Override
+            Object runChunk(int from, int to) {
+                R partial = identity;
+                for (int i = from; i < to; i++) {
+                    partial = accumulator.call(partial, list.get(i));
+                }
+                // boxed, since a null partial result would not be merged
+                return new Object[] { partial };
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            R merge(List<Object> partials) {
+                R result = identity;
+                for (Object partial : partials) {
+                    result = combiner.call(result, (R) ((Object[]) partial)[0]);
+                }
+                return result;
+            }
+        }.start(backgroundExecutor);
+    }
+
+    /**
+     * Calls the action for every item of the iterable on the main thread, spread over as many ticks as needed
+     * to spend at most about the given time per tick. Use this instead of {@link #startNew(Callable)} for jobs
+     * that have to touch the Bukkit API but would stall the server if run in one go. The {@code Task} completes
+     * once the iterable is exhausted, or with the first exception thrown by the action; cancelling the
+     * {@code Task} stops the iteration before the next slice. The iterable must not be modified meanwhile.
+     *
+     * @param <V> the item type
+     * @param iterable the items
+     * @param action the action
+     * @param budgetNanos the time budget per tick in nanoseconds
+     * @return the task
+     */
+    public <V> Task<Void> forEachAcrossTicks(Iterable<? extends V> iterable, Action1<? super V> action, long budgetNanos) {
+
+        return forEachAcrossTicks(iterable, action, budgetNanos, null);
+    }
+
+    /**
+     * Calls the action for every item of the iterable on the main thread, spread over ticks, see
+     * {@link #forEachAcrossTicks(Iterable, Action1, long)}. After every tick the progress callback receives
+     * the number of items processed so far.
+     *
+     * @param <V> the item type
+     * @param iterable the items
+     * @param action the action
+     * @param budgetNanos the time budget per tick in nanoseconds
+     * @param progress the progress callback, or null
+     * @return the task
+     */
+    public <V> Task<Void> forEachAcrossTicks(Iterable<? extends V> iterable, Action1<? super V> action, long budgetNanos,
+                                             Action1<Long> progress) {
+
+        return new TickSlicedLoop<V>(plugin, iterable, action, budgetNanos, progress).start();
+    }
+
+    /**
+     * Creates a {@link TaskCache} that loads missing values on the background executor.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param loader the function loading the value of a key
+     * @return the cache
+     */
+    public <K, V> TaskCache<K, V> newCache(Func1<? super K, ? extends V> loader) {
+
+        return newCache(loader, backgroundExecutor);
+    }
+
+    /**
+     * Creates a {@link TaskCache} that loads missing values on the executor.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param loader the function loading the value of a key
+     * @param executor the executor
+     * @return the cache
+     */
+    public <K, V> TaskCache<K, V> newCache(Func1<? super K, ? extends V> loader, Executor executor) {
+
+        return new TaskCache<K, V>(plugin, loader, executor);
+    }
+
+    /**
+     * Creates a {@link BatchLoader} that calls the batch function on the background executor once per tick,
+     * or whenever 100 keys have been requested.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param batchFunction the function loading the values of a set of keys
+     * @return the loader
+     */
+    public <K, V> BatchLoader<K, V> newBatchLoader(Func1<Set<K>, Map<K, V>> batchFunction) {
+
+        return newBatchLoader(batchFunction, backgroundExecutor, 100);
+    }
+
+    /**
+     * Creates a {@link BatchLoader} that calls the batch function on the executor once per tick, or whenever
+     * the maximum batch size has been reached.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param batchFunction the function loading the values of a set of keys
+     * @param executor the executor
+     * @param maxBatchSize the maximum number of keys per batch
+     * @return the loader
+     */
+    public <K, V> BatchLoader<K, V> newBatchLoader(Func1<Set<K>, Map<K, V>> batchFunction, Executor executor, int maxBatchSize) {
+
+        return new BatchLoader<K, V>(plugin, batchFunction, executor, maxBatchSize);
+    }
+
     /**
-     * Creates a {@code Task} from the specified {@link TaskCompletionSource}.
+     * Creates an empty {@link TaskGraph}.
+     *
+     * @return the graph
+     */
+    public TaskGraph newGraph() {
+
+        return new TaskGraph(plugin);
+    }
+
+    private static <V> List<? extends V> randomAccess(Collection<? extends V> items) {
+        if (items instanceof List && items instanceof RandomAccess) {
+            return (List<? extends V>) items;
+        }
+        return new ArrayList<V>(items);
+    }
+
+    /**
+     * Gets the {@code Task} of the specified {@link TaskCompletionSource}. The source completes it directly,
+     * so every call for the same source returns the same {@code Task}.
      *
      * @param <V> The result type returned by the Task's {@code get} methods.
      * @param source the source to create the task from
@@ -110,6 +666,19 @@ public class TaskFactory {
         return Task.fromSource(plugin, source);
     }
 
+    /**
+     * Creates a {@code Task} that completes with the last item emitted by the specified {@link Observable}.
+     * Cancelling the {@code Task} unsubscribes from the observable.
+     *
+     * @param <V> The result type returned by the Task's {@code get} methods.
+     * @param observable the observable to subscribe to
+     * @return the task
+     */
+    public <V> Task<V> fromObservable(final Observable<? extends V> observable)
+    {
+        return Task.fromObservable(plugin, observable);
+    }
+
     /**
      * Creates a {@code Task} from the specified data.
      *
@@ -191,6 +760,39 @@ public class TaskFactory {
         return Task.whenAll(plugin, tasks);
     }
 
+    /**
+     * Waits for the completion of all specified tasks and collects their results into an {@code int[]}.
+     *
+     * @param tasks the tasks to wait for
+     * @return the task
+     */
+    public Task<int[]> whenAllInt(final List<Task<Integer>> tasks)
+    {
+        return Task.whenAllInt(plugin, tasks);
+    }
+
+    /**
+     * Waits for the completion of all specified tasks and collects their results into a {@code long[]}.
+     *
+     * @param tasks the tasks to wait for
+     * @return the task
+     */
+    public Task<long[]> whenAllLong(final List<Task<Long>> tasks)
+    {
+        return Task.whenAllLong(plugin, tasks);
+    }
+
+    /**
+     * Waits for the completion of all specified tasks and collects their results into a {@code double[]}.
+     *
+     * @param tasks the tasks to wait for
+     * @return the task
+     */
+    public Task<double[]> whenAllDouble(final List<Task<Double>> tasks)
+    {
+        return Task.whenAllDouble(plugin, tasks);
+    }
+
     /**
      * Waits for the completion of any task.
      *
@@ -0,0 +1,405 @@
+/*
+ *  Copyright (c) 2014 Ryan Michela.
+ *
+ *  Filename: TaskGraph.java
+ */
+package rx.bukkit.task;
+
+import rx.bukkit.RxJavaPlugin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p> The {@code TaskGraph} runs a graph of named nodes, each of which depends on the results of other nodes,
+ * e.g. loading a profile, then loading inventory and stats of the profile in parallel, then rendering both on
+ * the main thread. Every node is started as soon as all of its dependencies have completed, so independent
+ * branches overlap instead of running one after another as with hand written {@code continueWith} chains.
+ *
+ * <p> Nodes run on the background executor unless they are added with {@link #addOnMainThread}. A node can
+ * only depend on nodes added before it, which keeps the graph acyclic. The graph can be run any number of
+ * times; every run creates its own {@link Task} per node, with the name of the node as its id.
+ */
+public class TaskGraph
+{
+    /**
+     * The function of a node.
+     *
+     * @param <V> the result type of the node
+     */
+    public abstract static class NodeFunc<V>
+    {
+        /**
+         * Computes the result of the node.
+         *
+         * @param results the results of the run, of which those of the dependencies of the node are available
+         * @return the result of the node
+         * @throws Exception the exception
+         */
+        public abstract V call(Results results) throws Exception;
+    }
+
+    /**
+     * The results of the nodes of a run.
+     */
+    public static final class Results
+    {
+        /** The _index of the nodes by name. */
+        private final Map<String, Integer> _index;
+
+        /** The _tasks of the nodes. */
+        private final Task<?>[] _tasks;
+
+        Results(Map<String, Integer> index, Task<?>[] tasks)
+        {
+            _index = index;
+            _tasks = tasks;
+        }
+
+        /**
+         * Gets the result of a node. Within a node only the results of its dependencies are guaranteed
+         * to be available.
+         *
+         * @param <V> the result type of the node
+         * @param name the name of the node
+         * @return the result
+         * @throws IllegalArgumentException if there is no such node
+         * @throws IllegalStateException if the node has not completed successfully
+         */
+        @SuppressWarnings("unchecked")
+        public <V> V get(String name)
+        {
+            Integer i = _index.get(name);
+
+            if (i == null)
+            {
+                throw new IllegalArgumentException("There is no node named " + name + ".");
+            }
+
+            Task<?> task = _tasks[i];
+
+            if (!task.isCompletedSuccessfully())
+            {
+                throw new IllegalStateException("The node " + name + " has not completed successfully.");
+            }
+
+            return (V) task.getRaw();
+        }
+
+        /**
+         * Gets the {@link Task} of a node.
+         *
+         * @param name the name of the node
+         * @return the task, or null if there is no such node
+         */
+        public Task<?> getTask(String name)
+        {
+            Integer i = _index.get(name);
+
+            return i == null ? null : _tasks[i];
+        }
+    }
+
+    /**
+     * The definition of a node.
+     */
+    private static final class Node
+    {
+        final String name;
+        final NodeFunc<?> func;
+        final boolean mainThread;
+        final int[] dependencies;
+
+        Node(String name, NodeFunc<?> func, boolean mainThread, int[] dependencies)
+        {
+            this.name = name;
+            this.func = func;
+            this.mainThread = mainThread;
+            this.dependencies = dependencies;
+        }
+    }
+
+    /**
+     * Starts a node once all of its dependencies have completed, or cancels it if one of them did not succeed.
+     */
+    private static final class Gate implements ITaskStart
+    {
+        private final Task<?> _node;
+        private final Task<?>[] _dependencies;
+        private final AtomicInteger _remaining;
+
+        Gate(Task<?> node, Task<?>[] dependencies)
+        {
+            _node = node;
+            _dependencies = dependencies;
+            _remaining = new AtomicInteger(dependencies.length);
+        }
+
+        @Override
+        public void start()
+        {
+            if (_remaining.decrementAndGet() != 0)
+            {
+                return;
+            }
+
+            for (Task<?> dependency : _dependencies)
+            {
+                if (!dependency.isCompletedSuccessfully())
+                {
+                    _node.cancel(false);
+                    return;
+                }
+            }
+
+            _node.start();
+        }
+    }
+
+    /** The _plugin. */
+    private final RxJavaPlugin _plugin;
+
+    /** The _nodes in the order they were added. */
+    private final List<Node> _nodes = new ArrayList<Node>();
+
+    /** The _index of the nodes by name. */
+    private final Map<String, Integer> _index = new HashMap<String, Integer>();
+
+    /**
+     * Creates a {@code TaskGraph}, see {@link TaskFactory#newGraph}.
+     */
+    TaskGraph(RxJavaPlugin plugin)
+    {
+        _plugin = plugin;
+    }
+
+    /**
+     * Adds a node that runs on the background executor.
+     *
+     * @param name the unique name of the node
+     * @param func the function of the node
+     * @param dependencies the names of the nodes whose results the node needs
+     * @return this graph
+     */
+    public TaskGraph add(String name, NodeFunc<?> func, String... dependencies)
+    {
+        return add(name, func, false, dependencies);
+    }
+
+    /**
+     * Adds a node that runs on the main thread, e.g. to touch the Bukkit API.
+     *
+     * @param name the unique name of the node
+     * @param func the function of the node
+     * @param dependencies the names of the nodes whose results the node needs
+     * @return this graph
+     */
+    public TaskGraph addOnMainThread(String name, NodeFunc<?> func, String... dependencies)
+    {
+        return add(name, func, true, dependencies);
+    }
+
+    private synchronized TaskGraph add(String name, NodeFunc<?> func, boolean mainThread, String... dependencies)
+    {
+        if (name == null || func == null)
+        {
+            throw new NullPointerException();
+        }
+
+        if (_index.containsKey(name))
+        {
+            throw new IllegalArgumentException("There already is a node named " + name + ".");
+        }
+
+        int[] indexes = new int[dependencies.length];
+
+        for (int i = 0; i < dependencies.length; i++)
+        {
+            Integer index = _index.get(dependencies[i]);
+
+            if (index == null)
+            {
+                throw new IllegalArgumentException("The dependency " + dependencies[i] + " of " + name + " has to be added first.");
+            }
+
+            indexes[i] = index;
+        }
+
+        _index.put(name, _nodes.size());
+        _nodes.add(new Node(name, func, mainThread, indexes));
+
+        return this;
+    }
+
+    /**
+     * Runs the graph. The {@code Task} completes with the results of all nodes on the main thread once every
+     * node has completed. If a node fails, the nodes depending on it, directly or transitively, are cancelled,
+     * while independent ones still run; once every node has settled the {@code Task} faults with the exception
+     * of the first node that failed. Cancelling the {@code Task} cancels all nodes that have not completed yet.
+     *
+     * @return the task
+     */
+    public Task<Results> run()
+    {
+        final Node[] nodes;
+        final Map<String, Integer> index;
+
+        synchronized (this)
+        {
+            nodes = _nodes.toArray(new Node[_nodes.size()]);
+            index = new HashMap<String, Integer>(_index);
+        }
+
+        TaskFactory factory = _plugin.getTaskFactory();
+        final Task<?>[] tasks = new Task<?>[nodes.length];
+        final Results results = new Results(index, tasks);
+        final Task<Results> graph = new Task<Results>(_plugin, factory.defaultExecutor, "");
+
+        for (int i = 0; i < nodes.length; i++)
+        {
+            final Node node = nodes[i];
+            Executor executor = node.mainThread ? factory.defaultExecutor : factory.backgroundExecutor;
+
+            tasks[i] = new Task<Object>(_plugin, new Callable<Object>()
+            {
+                @Override
+                public Object call() throws Exception
+                {
+                    return node.func.call(results);
+                }
+            }, executor, node.name);
+        }
+
+        final AtomicInteger remaining = new AtomicInteger(tasks.length);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        ITaskStart settled = new ITaskStart()
+        {
+            @Override
+            public void start()
+            {
+                if (remaining.decrementAndGet() == 0)
+                {
+                    completed(graph, tasks, results, failure);
+                }
+            }
+        };
+
+        for (int i = 0; i < tasks.length; i++)
+        {
+            final Task<?> task = tasks[i];
+
+            task.addContinuation(new ITaskStart()
+            {
+                @Override
+                public void start()
+                {
+                    if (task.isFaulted())
+                    {
+                        failure.compareAndSet(null, task.getException());
+                    }
+                }
+            });
+            task.addContinuation(settled);
+        }
+
+        graph.addContinuation(new ITaskStart()
+        {
+            @Override
+            public void start()
+            {
+                if (graph.isCancelled())
+                {
+                    for (Task<?> task : tasks)
+                    {
+                        task.cancel(false);
+                    }
+                }
+            }
+        });
+
+        for (int i = 0; i < nodes.length; i++)
+        {
+            int[] dependencies = nodes[i].dependencies;
+
+            if (dependencies.length == 0)
+            {
+                continue;
+            }
+
+            Task<?>[] inputs = new Task<?>[dependencies.length];
+
+            for (int d = 0; d < dependencies.length; d++)
+            {
+                inputs[d] = tasks[dependencies[d]];
+            }
+
+            Gate gate = new Gate(tasks[i], inputs);
+
+            for (Task<?> input : inputs)
+            {
+                input.addContinuation(gate);
+            }
+        }
+
+        if (tasks.length == 0)
+        {
+            graph.set(results);
+        }
+
+        for (int i = 0; i < nodes.length; i++)
+        {
+            if (nodes[i].dependencies.length == 0 && !graph.isDone())
+            {
+                tasks[i].start();
+            }
+        }
+
+        return graph;
+    }
+
+    /**
+     * Completes the task of the run on the main thread once all nodes have settled: faulted with the first
+     * failure, cancelled if a node was cancelled for another reason, or with the results.
+     */
+    private void completed(final Task<Results> graph, final Task<?>[] tasks, final Results results,
+                           final AtomicReference<Throwable> failure)
+    {
+        if (graph.isDone())
+        {
+            return;
+        }
+
+        _plugin.getTaskFactory().defaultExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Throwable exception = failure.get();
+
+                if (exception != null)
+                {
+                    graph.setException(exception);
+                    return;
+                }
+
+                for (Task<?> task : tasks)
+                {
+                    if (task.isCancelled())
+                    {
+                        graph.cancel(false);
+                        return;
+                    }
+                }
+
+                graph.set(results);
+            }
+        });
+    }
+}
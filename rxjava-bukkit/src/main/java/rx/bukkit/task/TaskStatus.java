@@ -0,0 +1,21 @@
+/*
+ *  Copyright (c) 2014 Ryan Michela.
+ *  
+ *  Filename: TaskStatus.java
+ */
+package rx.bukkit.task;
+
+/**
+ * The {@code TaskStatus} describes the stage of the lifecycle a {@link Task} is in.
+ */
+public enum TaskStatus
+{
+    /** The task has not completed yet. */
+    Pending,
+    /** The task has completed with a result. */
+    Succeeded,
+    /** The task has completed with an exception. */
+    Faulted,
+    /** The task has been cancelled. */
+    Canceled
+}
@@ -0,0 +1,480 @@
+/*
+ *  Copyright (c) 2014 Ryan Michela.
+ *
+ *  Filename: TaskTracer.java
+ */
+package rx.bukkit.task;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p> The {@code TaskTracer} records the lifecycle of a sample of {@link Task}s and aggregates the time spent
+ * in each {@link Phase} by {@link Task#getId()} into log2 histograms. Continuations inherit the id of their
+ * antecedent, so the histograms of an id cover the whole chain; the {@link Phase#Lag} of a chain that hops
+ * between the main thread and the background executor shows the ticks lost between its steps.
+ *
+ * <p> Tracing is off until a sample rate is set. A {@code Task} that is not sampled costs a single volatile
+ * read when it is created and a null check at every transition.
+ */
+public class TaskTracer
+{
+    /** The histogram buckets, one per bit of a nanosecond duration. */
+    private static final int BUCKETS = 64;
+
+    /** The key of tasks without an id. */
+    private static final String UNNAMED = "<unnamed>";
+
+    /** The key of the ids traced after {@link #MAX_IDS} distinct ids have been seen. */
+    private static final String OTHER = "<other>";
+
+    /** The number of distinct ids traced separately, so that generated ids cannot grow the _stats unbounded. */
+    static final int MAX_IDS = 1024;
+
+    /**
+     * The phases of the lifecycle of a {@code Task}.
+     */
+    public enum Phase
+    {
+        /** From creation until the {@code Task} is started or its antecedent has completed. */
+        Waiting,
+
+        /** From being started until the executor runs the {@code Task}, e.g. the wait for the next tick. */
+        Lag,
+
+        /** From being run by the executor until completion. */
+        Running,
+
+        /** From creation until completion. */
+        Total
+    }
+
+    /**
+     * The timestamps of a sampled {@code Task}. Every timestamp is written by the thread that moves the
+     * {@code Task} into the next phase, before handing it over to the executor or completing it.
+     */
+    static final class Trace
+    {
+        final long created;
+        long queued;
+        long started;
+
+        Trace(long created)
+        {
+            this.created = created;
+        }
+    }
+
+    /**
+     * A histogram of durations with power of two buckets. Readings are not taken atomically across
+     * buckets, which is good enough for reporting while tasks keep completing.
+     */
+    public static final class Histogram
+    {
+        /** The _buckets. */
+        private final AtomicLongArray _buckets = new AtomicLongArray(BUCKETS);
+
+        /** The _count. */
+        private final AtomicLong _count = new AtomicLong();
+
+        /** The _sum. */
+        private final AtomicLong _sum = new AtomicLong();
+
+        /** The _max. */
+        private final AtomicLong _max = new AtomicLong();
+
+        /**
+         * Records a duration.
+         *
+         * @param nanos the duration in nanoseconds
+         */
+        void record(long nanos)
+        {
+            if (nanos < 0)
+            {
+                nanos = 0;
+            }
+
+            _buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(nanos) - (nanos == 0 ? 0 : 1));
+            _count.incrementAndGet();
+            _sum.addAndGet(nanos);
+
+            long max;
+
+            while (nanos > (max = _max.get()) && !_max.compareAndSet(max, nanos))
+            {
+                // retry
+            }
+        }
+
+        /**
+         * Gets the number of recorded durations.
+         *
+         * @return the count
+         */
+        public long getCount()
+        {
+            return _count.get();
+        }
+
+        /**
+         * Gets the mean duration.
+         *
+         * @return the mean in nanoseconds
+         */
+        public long getMean()
+        {
+            long count = _count.get();
+
+            return count == 0 ? 0 : _sum.get() / count;
+        }
+
+        /**
+         * Gets the longest duration.
+         *
+         * @return the maximum in nanoseconds
+         */
+        public long getMax()
+        {
+            return _max.get();
+        }
+
+        /**
+         * Gets the upper bound of the bucket holding the given percentile, so the result is at most
+         * twice the exact percentile.
+         *
+         * @param percentile the percentile between 0 and 100
+         * @return the percentile in nanoseconds
+         */
+        public long getPercentile(double percentile)
+        {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                counts[i] = _buckets.get(i);
+                total += counts[i];
+            }
+
+            if (total == 0)
+            {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(total * Math.min(Math.max(percentile, 0), 100) / 100);
+            long seen = 0;
+
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                seen += counts[i];
+
+                if (seen >= Math.max(rank, 1))
+                {
+                    return Math.min(i == BUCKETS - 1 ? Long.MAX_VALUE : (2L << i) - 1, getMax());
+                }
+            }
+
+            return getMax();
+        }
+    }
+
+    /**
+     * The aggregated traces of all sampled tasks sharing an id.
+     */
+    public static final class Stats
+    {
+        /** The histograms by phase. */
+        private final Histogram[] _histograms = new Histogram[Phase.values().length];
+
+        /** The _faulted. */
+        private final AtomicLong _faulted = new AtomicLong();
+
+        /** The _cancelled. */
+        private final AtomicLong _cancelled = new AtomicLong();
+
+        Stats()
+        {
+            for (int i = 0; i < _histograms.length; i++)
+            {
+                _histograms[i] = new Histogram();
+            }
+        }
+
+        /**
+         * Gets the histogram of a phase.
+         *
+         * @param phase the phase
+         * @return the histogram
+         */
+        public Histogram getHistogram(Phase phase)
+        {
+            return _histograms[phase.ordinal()];
+        }
+
+        /**
+         * Gets the number of sampled tasks that completed with an exception.
+         *
+         * @return the count
+         */
+        public long getFaulted()
+        {
+            return _faulted.get();
+        }
+
+        /**
+         * Gets the number of sampled tasks that were cancelled.
+         *
+         * @return the count
+         */
+        public long getCancelled()
+        {
+            return _cancelled.get();
+        }
+    }
+
+    /** The _stats by task id. */
+    private final ConcurrentMap<String, Stats> _stats = new ConcurrentHashMap<String, Stats>();
+
+    /** One in _sample rate tasks is traced, or none if 0. */
+    private volatile int _sampleRate = 0;
+
+    /**
+     * Sets the sample rate. With a rate of {@code n} about one in {@code n} tasks is traced; a rate of 1 traces
+     * every task and a rate of 0 turns tracing off. Tasks created before the change keep their sampling decision.
+     *
+     * @param oneIn the sample rate
+     */
+    public void setSampleRate(int oneIn)
+    {
+        if (oneIn < 0)
+        {
+            throw new IllegalArgumentException("The oneIn argument cannot be negative.");
+        }
+
+        _sampleRate = oneIn;
+    }
+
+    /**
+     * Gets the sample rate.
+     *
+     * @return the sample rate, or 0 if tracing is off
+     */
+    public int getSampleRate()
+    {
+        return _sampleRate;
+    }
+
+    /**
+     * Decides whether a new {@code Task} is traced.
+     *
+     * @return the trace, or null if the {@code Task} is not sampled
+     */
+    Trace sample()
+    {
+        int rate = _sampleRate;
+
+        if (rate == 0 || (rate > 1 && ThreadLocalRandom.current().nextInt(rate) != 0))
+        {
+            return null;
+        }
+
+        return new Trace(System.nanoTime());
+    }
+
+    /**
+     * Records the trace of a completed {@code Task}. Phases the {@code Task} never entered, e.g. because it
+     * was cancelled before it could run, are left out.
+     *
+     * @param id the id of the task
+     * @param trace the trace
+     * @param outcome the outcome
+     */
+    void record(String id, Trace trace, Task.Outcome outcome)
+    {
+        long completed = System.nanoTime();
+        String key = id == null || id.isEmpty() ? UNNAMED : id;
+        Stats stats = _stats.get(key);
+
+        if (stats == null && _stats.size() >= MAX_IDS)
+        {
+            key = OTHER;
+            stats = _stats.get(key);
+        }
+
+        if (stats == null)
+        {
+            Stats created = new Stats();
+
+            stats = _stats.putIfAbsent(key, created);
+
+            if (stats == null)
+            {
+                stats = created;
+            }
+        }
+
+        if (trace.queued != 0)
+        {
+            stats.getHistogram(Phase.Waiting).record(trace.queued - trace.created);
+
+            if (trace.started != 0)
+            {
+                stats.getHistogram(Phase.Lag).record(trace.started - trace.queued);
+                stats.getHistogram(Phase.Running).record(completed - trace.started);
+            }
+        }
+
+        stats.getHistogram(Phase.Total).record(completed - trace.created);
+
+        if (outcome.cancelled)
+        {
+            stats._cancelled.incrementAndGet();
+        }
+        else if (outcome.exception != null)
+        {
+            stats._faulted.incrementAndGet();
+        }
+    }
+
+    /**
+     * Gets the aggregated traces by task id, sorted by id. Tasks without an id are reported as
+     * {@code <unnamed>}; once 1024 distinct ids have been traced, tasks with further ids are reported as
+     * {@code <other>} until the next {@link #reset()}.
+     *
+     * @return the stats
+     */
+    public Map<String, Stats> getStats()
+    {
+        return Collections.unmodifiableMap(new TreeMap<String, Stats>(_stats));
+    }
+
+    /**
+     * Discards all aggregated traces.
+     */
+    public void reset()
+    {
+        _stats.clear();
+    }
+
+    /**
+     * Formats the aggregated traces, one line per task id, with the median and the 99th percentile of
+     * every phase in milliseconds.
+     *
+     * @return the lines
+     */
+    public List<String> report()
+    {
+        List<String> lines = new ArrayList<String>();
+
+        for (Map.Entry<String, Stats> entry : getStats().entrySet())
+        {
+            Stats stats = entry.getValue();
+            StringBuilder line = new StringBuilder(entry.getKey())
+                    .append(": n=").append(stats.getHistogram(Phase.Total).getCount());
+
+            for (Phase phase : Phase.values())
+            {
+                Histogram histogram = stats.getHistogram(phase);
+
+                line.append(' ').append(phase.name().toLowerCase())
+                        .append('=').append(millis(histogram.getPercentile(50)))
+                        .append('/').append(millis(histogram.getPercentile(99)));
+            }
+
+            line.append(" max=").append(millis(stats.getHistogram(Phase.Total).getMax()));
+
+            if (stats.getFaulted() != 0)
+            {
+                line.append(" faulted=").append(stats.getFaulted());
+            }
+
+            if (stats.getCancelled() != 0)
+            {
+                line.append(" cancelled=").append(stats.getCancelled());
+            }
+
+            lines.add(line.toString());
+        }
+
+        return lines;
+    }
+
+    /**
+     * Creates a {@link CommandExecutor} exporting the traces, to be bound to a command of the plugin. Without
+     * arguments it sends the {@link #report()}; {@code reset} discards the traces and {@code sample <n>}
+     * sets the sample rate.
+     *
+     * @return the command executor
+     */
+    public CommandExecutor toCommandExecutor()
+    {
+        return new CommandExecutor()
+        {
+            @Override
+            public boolean onCommand(CommandSender sender, Command command, String label, String[] args)
+            {
+                if (args.length == 0)
+                {
+                    List<String> lines = report();
+
+                    if (lines.isEmpty())
+                    {
+                        sender.sendMessage(_sampleRate == 0 ? "Task tracing is off." : "No tasks traced yet.");
+                    }
+                    else
+                    {
+                        sender.sendMessage("Task phases (p50/p99 ms), " + (_sampleRate == 0 ? "tracing off:" : "sampling 1 in " + _sampleRate + ":"));
+                        sender.sendMessage(lines.toArray(new String[lines.size()]));
+                    }
+
+                    return true;
+                }
+
+                if (args.length == 1 && args[0].equalsIgnoreCase("reset"))
+                {
+                    reset();
+                    sender.sendMessage("Task traces reset.");
+
+                    return true;
+                }
+
+                if (args.length == 2 && args[0].equalsIgnoreCase("sample"))
+                {
+                    try
+                    {
+                        setSampleRate(Integer.parseInt(args[1]));
+                        sender.sendMessage("Tracing 1 in " + _sampleRate + " tasks.");
+
+                        return true;
+                    }
+                    catch (IllegalArgumentException e)
+                    {
+                        sender.sendMessage("The sample rate must be a number of at least 0.");
+
+                        return true;
+                    }
+                }
+
+                return false;
+            }
+        };
+    }
+
+    private static String millis(long nanos)
+    {
+        return String.format("%.2f", nanos / 1000000.0);
+    }
+}
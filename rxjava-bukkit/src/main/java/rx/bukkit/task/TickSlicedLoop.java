@@ -0,0 +1,138 @@
+/*
+ *  Copyright (c) 2014 Ryan Michela.
+ *
+ *  Filename: TickSlicedLoop.java
+ */
+package rx.bukkit.task;
+
+import rx.bukkit.RxJavaPlugin;
+import rx.functions.Action1;
+
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+
+/**
+ * A loop over an {@link Iterable} that runs on the main executor in slices, one per tick. A slice processes
+ * items until the time budget of the tick is used up and then requeues the loop, which picks up at the same
+ * position of the iterator in the next tick. At least one item is processed per slice, so the loop always
+ * makes progress even if a single item exceeds the budget.
+ *
+ * @param <V> the item type
+ */
+final class TickSlicedLoop<V> implements Runnable
+{
+    /** The _task completed once the iterable is exhausted. */
+    private final Task<Void> _task;
+
+    /** The _executor. */
+    private final Executor _executor;
+
+    /** The _iterable. */
+    private final Iterable<? extends V> _iterable;
+
+    /** The _action. */
+    private final Action1<? super V> _action;
+
+    /** The _budget nanos per tick. */
+    private final long _budgetNanos;
+
+    /** The _progress callback, or null. */
+    private final Action1<Long> _progress;
+
+    /** The _iterator, created by the first slice. */
+    private Iterator<? extends V> _iterator;
+
+    /** The number of items _processed so far. */
+    private long _processed;
+
+    /**
+     * Creates a {@code TickSlicedLoop}.
+     *
+     * @param iterable the items
+     * @param action the action called for every item
+     * @param budgetNanos the time budget per tick
+     * @param progress the callback receiving the number of items processed after every slice, or null
+     */
+    TickSlicedLoop(RxJavaPlugin plugin, Iterable<? extends V> iterable, Action1<? super V> action, long budgetNanos, Action1<Long> progress)
+    {
+        if (budgetNanos <= 0)
+        {
+            throw new IllegalArgumentException("The budgetNanos argument must be positive.");
+        }
+
+        _executor = plugin.getTaskFactory().defaultExecutor;
+        _task = new Task<Void>(plugin, _executor, "");
+        _iterable = iterable;
+        _action = action;
+        _budgetNanos = budgetNanos;
+        _progress = progress;
+    }
+
+    /**
+     * Queues the first slice.
+     *
+     * @return the task completed once the iterable is exhausted
+     */
+    Task<Void> start()
+    {
+        _executor.execute(this);
+
+        return _task;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run()
+    {
+        if (_task.isDone())
+        {
+            return;
+        }
+
+        boolean exhausted;
+
+        try
+        {
+            if (_iterator == null)
+            {
+                _iterator = _iterable.iterator();
+            }
+
+            long deadline = System.nanoTime() + _budgetNanos;
+
+            while (_iterator.hasNext())
+            {
+                _action.call(_iterator.next());
+                _processed++;
+
+                if (System.nanoTime() - deadline >= 0)
+                {
+                    break;
+                }
+            }
+
+            exhausted = !_iterator.hasNext();
+
+            if (_progress != null)
+            {
+                _progress.call(_processed);
+            }
+        }
+        catch (Throwable t)
+        {
+            _task.setException(t);
+            return;
+        }
+
+        if (exhausted)
+        {
+            _task.set(null);
+        }
+        else
+        {
+            _executor.execute(this);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package rx.bukkit;
+
+import org.bukkit.Server;
+import org.bukkit.command.Command;
+import org.bukkit.command.PluginCommand;
+import org.bukkit.command.PluginCommandYamlParser;
+import org.bukkit.command.SimpleCommandMap;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.SimplePluginManager;
+import org.bukkit.scheduler.BukkitScheduler;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Copyright 2014 Ryan Michela
+ *
+ * A stand-in for the Bukkit server, so tests and benchmarks run without starting Minecraft. The server and its
+ * scheduler are proxies; the plugin manager is Bukkit's own {@link SimplePluginManager}, so events are dispatched
+ * through the real handler lists. Scheduled tasks, synchronous and asynchronous alike, are run on the calling thread by
+ * {@link #tick()}, so a test decides when queued work runs, and thread hand-offs stay out of the benchmark numbers.
+ * The proxies cost the same in every run, so compare benchmark results against each other rather than reading them
+ * as absolute server timings.
+ * <p>
+ * Shipped in the test jar of rxjava-bukkit, which the benchmarks depend on.
+ */
+public final class FakeServer {
+    private static final int MAX_TICKS_UNTIL_IDLE = 10000;
+
+    private final Logger logger = Logger.getLogger("FakeServer");
+    private final Server server;
+    private final BukkitScheduler scheduler;
+    private final SimpleCommandMap commandMap;
+    private final PluginManager pluginManager;
+
+    private final ArrayDeque<FakeTask> queue = new ArrayDeque<>();
+    private final Map<Integer, FakeTask> tasks = new HashMap<>();
+    private int nextTaskId;
+    private long currentTick;
+
+    private static final class FakeTask {
+        private final int id;
+        private final Runnable runnable;
+        private final long dueTick;
+
+        private FakeTask(int id, Runnable runnable, long dueTick) {
+            this.id = id;
+            this.runnable = runnable;
+            this.dueTick = dueTick;
+        }
+    }
+
+    public FakeServer() {
+        server = proxy(Server.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getScheduler":
+                        return scheduler;
+                    case "getPluginManager":
+                        return pluginManager;
+                    case "getPluginCommand":
+                        Command command = commandMap.getCommand((String) args[0]);
+                        return command instanceof PluginCommand ? command : null;
+                    case "getLogger":
+                        return logger;
+                    case "isPrimaryThread":
+                        return true;
+                    case "getName":
+                        return "FakeServer";
+                    default:
+                        return objectMethod(proxy, method, args);
+                }
+            }
+        });
+
+        scheduler = proxy(BukkitScheduler.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "scheduleSyncDelayedTask":
+                    case "scheduleAsyncDelayedTask":
+                        return schedule((Runnable) args[1], args.length > 2 ? (Long) args[2] : 0);
+                    case "cancelTask":
+                        tasks.remove((Integer) args[0]);
+                        return null;
+                    default:
+                        return objectMethod(proxy, method, args);
+                }
+            }
+        });
+
+        commandMap = new SimpleCommandMap(server);
+        pluginManager = new SimplePluginManager(server, commandMap);
+    }
+
+    public Server getServer() {
+        return server;
+    }
+
+    public PluginManager getPluginManager() {
+        return pluginManager;
+    }
+
+    /**
+     * Registers the commands declared in the description of a plugin, as the server does when it enables the plugin.
+     */
+    public void registerCommands(Plugin plugin) {
+        commandMap.registerAll(plugin.getDescription().getName(), PluginCommandYamlParser.parse(plugin));
+    }
+
+    /**
+     * Returns the number of tasks that are scheduled and not yet run or cancelled.
+     */
+    public int getPending() {
+        return tasks.size();
+    }
+
+    /**
+     * Runs one server tick: every task that was due when the tick started. Tasks scheduled while the tick runs wait
+     * for the next one, as on a real server.
+     *
+     * @return the number of tasks run
+     */
+    public int tick() {
+        currentTick++;
+        int ran = 0;
+
+        for (int i = queue.size(); i > 0; i--) {
+            FakeTask task = queue.poll();
+            if (tasks.get(task.id) != task) {
+                continue; // cancelled
+            }
+            if (task.dueTick > currentTick) {
+                queue.add(task);
+                continue;
+            }
+
+            tasks.remove(task.id);
+            task.runnable.run();
+            ran++;
+        }
+        return ran;
+    }
+
+    /**
+     * Runs ticks until no task is left, e.g. until a chain of continuations has completed.
+     *
+     * @return the number of tasks run
+     */
+    public int runUntilIdle() {
+        int ran = 0;
+        for (int ticks = 0; !tasks.isEmpty(); ticks++) {
+            if (ticks == MAX_TICKS_UNTIL_IDLE) {
+                throw new IllegalStateException(tasks.size() + " tasks are still scheduled after " + ticks + " ticks");
+            }
+            ran += tick();
+        }
+        return ran;
+    }
+
+    private int schedule(Runnable runnable, long delay) {
+        FakeTask task = new FakeTask(++nextTaskId, runnable, currentTick + 1 + Math.max(delay, 0));
+        tasks.put(task.id, task);
+        queue.add(task);
+        return task.id;
+    }
+
+    private static Object objectMethod(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "FakeServer." + method.getDeclaringClass().getSimpleName();
+            default:
+                throw new UnsupportedOperationException(method.getDeclaringClass().getSimpleName() + "." + method.getName() + " is not supported by the fake server");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(FakeServer.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+}
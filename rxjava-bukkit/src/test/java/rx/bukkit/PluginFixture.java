@@ -0,0 +1,30 @@
+package rx.bukkit;
+
+import org.junit.After;
+import org.junit.Before;
+import rx.bukkit.task.TaskFactory;
+
+/**
+ * Copyright 2014 Ryan Michela
+ *
+ * Base of the tests that need an enabled plugin: every test gets a fresh {@link FakeServer} and a {@link TestPlugin}
+ * named after the test class, which is disabled, and so drained, after the test.
+ */
+public abstract class PluginFixture {
+    protected FakeServer server;
+    protected TestPlugin plugin;
+    protected TaskFactory taskFactory;
+
+    @Before
+    public void enablePlugin() {
+        server = new FakeServer();
+        plugin = new TestPlugin(server, getClass().getSimpleName());
+        plugin.enable();
+        taskFactory = plugin.getTaskFactory();
+    }
+
+    @After
+    public void disablePlugin() {
+        plugin.disable();
+    }
+}
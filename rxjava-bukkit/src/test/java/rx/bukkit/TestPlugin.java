@@ -0,0 +1,64 @@
+package rx.bukkit;
+
+import org.bukkit.plugin.InvalidDescriptionException;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPluginLoader;
+
+import java.io.File;
+import java.io.StringReader;
+
+/**
+ * Copyright 2014 Ryan Michela
+ *
+ * An {@link RxJavaPlugin} living on a {@link FakeServer}.
+ */
+public class TestPlugin extends RxJavaPlugin {
+    private final FakeServer server;
+
+    /**
+     * Creates a plugin declaring the given commands in its description, which are registered when it is enabled.
+     */
+    @SuppressWarnings("deprecation")
+    public TestPlugin(FakeServer server, String name, String... commands) {
+        super(new JavaPluginLoader(server.getServer()),
+                describe(name, commands),
+                new File("plugins", name),
+                new File("plugins", name + ".jar"));
+        this.server = server;
+    }
+
+    private static PluginDescriptionFile describe(String name, String... commands) {
+        StringBuilder yaml = new StringBuilder();
+        yaml.append("name: ").append(name).append('\n');
+        yaml.append("version: '1.0'\n");
+        yaml.append("main: ").append(TestPlugin.class.getName()).append('\n');
+        if (commands.length > 0) {
+            yaml.append("commands:\n");
+            for (String command : commands) {
+                yaml.append("  ").append(command).append(": {}\n");
+            }
+        }
+
+        try {
+            return new PluginDescriptionFile(new StringReader(yaml.toString()));
+        } catch (InvalidDescriptionException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Enables the plugin, which registers its commands, registers it with the shared schedulers and allows it to
+     * register listeners.
+     */
+    public void enable() {
+        server.registerCommands(this);
+        setEnabled(true);
+    }
+
+    /**
+     * Disables the plugin, draining the work it has left queued.
+     */
+    public void disable() {
+        setEnabled(false);
+    }
+}
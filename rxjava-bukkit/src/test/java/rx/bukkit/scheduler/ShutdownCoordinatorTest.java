@@ -0,0 +1,154 @@
+package rx.bukkit.scheduler;
+
+import org.junit.Before;
+import org.junit.Test;
+import rx.Scheduler;
+import rx.Subscription;
+import rx.bukkit.PluginFixture;
+import rx.bukkit.task.Task;
+import rx.bukkit.task.TaskFunc;
+import rx.functions.Action0;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Copyright 2014 Ryan Michela
+ *
+ * Tests draining the work a plugin has queued through its schedulers when it is disabled.
+ */
+public class ShutdownCoordinatorTest extends PluginFixture {
+    private final List<String> ran = new ArrayList<>();
+
+    private BukkitRxScheduler scheduler;
+    private ShutdownCoordinator coordinator;
+
+    @Before
+    public void createScheduler() {
+        scheduler = new BukkitRxScheduler(plugin, BukkitRxScheduler.ConcurrencyMode.SYNCHRONOUS);
+        coordinator = ShutdownCoordinator.forPlugin(plugin);
+    }
+
+    @Test
+    public void drainRunsQueuedWorkInSubmissionOrder() {
+        scheduler.execute(record("a"));
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                ran.add("b");
+                // submitted while draining, run by the drain as well
+                scheduler.execute(record("d"));
+            }
+        });
+        scheduler.execute(record("c"));
+        assertEquals(3, coordinator.getPending());
+
+        ShutdownCoordinator.Report report = coordinator.drain();
+
+        assertEquals(Arrays.asList("a", "b", "c", "d"), ran);
+        assertEquals(4, report.getCompleted());
+        assertTrue(report.isClean());
+        assertEquals(0, coordinator.getPending());
+    }
+
+    @Test
+    public void drainCompletesTaskChains() {
+        Task<Integer> task = plugin.getTaskFactory().startNew(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return 1;
+            }
+        }, plugin.getTaskFactory().backgroundExecutor).continueWith(new TaskFunc<Integer, Integer>() {
+            @Override
+            public Integer call(Task<Integer> task) throws Exception {
+                return task.get() + 1;
+            }
+        });
+
+        plugin.disable();
+
+        assertTrue(task.isCompletedSuccessfully());
+        assertEquals(2, (int) task.getRaw());
+    }
+
+    @Test
+    public void drainDropsAndUnsubscribesDelayedWork() {
+        Scheduler.Worker worker = scheduler.createWorker();
+        Subscription delayed = worker.schedule(new Action0() {
+            @Override
+            public void call() {
+                ran.add("delayed");
+            }
+        }, 1, TimeUnit.SECONDS);
+
+        ShutdownCoordinator.Report report = coordinator.drain();
+
+        assertTrue(ran.isEmpty());
+        assertEquals(1, report.getDropped().size());
+        assertFalse(report.isClean());
+        assertTrue(delayed.isUnsubscribed());
+    }
+
+    @Test
+    public void failingWorkDoesNotStopTheDrain() {
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("failed");
+            }
+        });
+        scheduler.execute(record("after"));
+
+        coordinator.drain();
+
+        assertEquals(Arrays.asList("after"), ran);
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void rejectsWorkOnceDrained() {
+        coordinator.drain();
+
+        scheduler.execute(record("late"));
+    }
+
+    @Test
+    public void drainedCoordinatorIsReplaced() {
+        assertSame(coordinator, ShutdownCoordinator.forPlugin(plugin));
+
+        coordinator.drain();
+
+        ShutdownCoordinator next = ShutdownCoordinator.forPlugin(plugin);
+        assertNotSame(coordinator, next);
+        assertEquals(0, coordinator.drain().getCompleted());
+    }
+
+    @Test
+    public void workRunByTheServerIsForgotten() {
+        scheduler.execute(record("a"));
+
+        server.runUntilIdle();
+
+        assertEquals(Arrays.asList("a"), ran);
+        assertEquals(0, coordinator.getPending());
+        assertEquals(0, coordinator.drain().getCompleted());
+    }
+
+    private Runnable record(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                ran.add(name);
+            }
+        };
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *  Copyright (c) 2014 Ryan Michela.
+ *
+ *  Filename: BatchLoaderTest.java
+ */
+package rx.bukkit.task;
+
+import org.junit.Test;
+import rx.bukkit.PluginFixture;
+import rx.functions.Func1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that a {@link BatchLoader} loads the keys requested during a tick with a single call of its batch function.
+ */
+public class BatchLoaderTest extends PluginFixture
+{
+    /** The key sets the batch function was called with. */
+    private final List<Set<Integer>> _batches = new ArrayList<Set<Integer>>();
+
+    /** Loads the square of every key but 13. */
+    private final Func1<Set<Integer>, Map<Integer, Integer>> _squares = new Func1<Set<Integer>, Map<Integer, Integer>>()
+    {
+        @Override
+        public Map<Integer, Integer> call(Set<Integer> keys)
+        {
+            _batches.add(new HashSet<Integer>(keys));
+            Map<Integer, Integer> values = new HashMap<Integer, Integer>();
+
+            for (Integer key : keys)
+            {
+                if (key != 13)
+                {
+                    values.put(key, key * key);
+                }
+            }
+
+            return values;
+        }
+    };
+
+    @Test
+    public void keysOfATickShareOneBatch()
+    {
+        BatchLoader<Integer, Integer> loader = taskFactory.newBatchLoader(_squares);
+
+        Task<Integer> two = loader.load(2);
+        Task<Integer> three = loader.load(3);
+        Task<Integer> missing = loader.load(13);
+
+        assertSame(two, loader.load(2));
+        assertFalse(two.isDone());
+
+        server.runUntilIdle();
+
+        assertEquals(1, _batches.size());
+        assertEquals(new HashSet<Integer>(Arrays.asList(2, 3, 13)), _batches.get(0));
+        assertEquals(4, (int) two.getRaw());
+        assertEquals(9, (int) three.getRaw());
+        assertTrue(missing.isCompletedSuccessfully());
+        assertNull(missing.getRaw());
+    }
+
+    @Test
+    public void fullBatchIsSentRightAway()
+    {
+        BatchLoader<Integer, Integer> loader = taskFactory.newBatchLoader(_squares, taskFactory.backgroundExecutor, 2);
+
+        loader.load(1);
+        loader.load(2);
+        loader.load(3);
+        server.runUntilIdle();
+
+        assertEquals(2, _batches.size());
+        assertEquals(new HashSet<Integer>(Arrays.asList(1, 2)), _batches.get(0));
+        assertEquals(new HashSet<Integer>(Arrays.asList(3)), _batches.get(1));
+    }
+
+    @Test
+    public void flushStartsANewBatch()
+    {
+        BatchLoader<Integer, Integer> loader = taskFactory.newBatchLoader(_squares);
+
+        Task<Integer> first = loader.load(2);
+        loader.flush();
+        Task<Integer> second = loader.load(2);
+        server.runUntilIdle();
+
+        assertEquals(2, _batches.size());
+        assertEquals(4, (int) first.getRaw());
+        assertEquals(4, (int) second.getRaw());
+        assertFalse(first == second);
+    }
+
+    @Test
+    public void failingBatchFaultsEveryTask()
+    {
+        final IllegalStateException failure = new IllegalStateException("failed");
+        BatchLoader<Integer, Integer> loader = taskFactory.newBatchLoader(new Func1<Set<Integer>, Map<Integer, Integer>>()
+        {
+            @Override
+            public Map<Integer, Integer> call(Set<Integer> keys)
+            {
+                throw failure;
+            }
+        });
+
+        Task<Integer> one = loader.load(1);
+        Task<Integer> two = loader.load(2);
+        server.runUntilIdle();
+
+        assertSame(failure, one.getException());
+        assertSame(failure, two.getException());
+    }
+}
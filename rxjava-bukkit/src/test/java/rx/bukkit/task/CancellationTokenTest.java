@@ -0,0 +1,164 @@
+/*
+ *  Copyright (c) 2014 Ryan Michela.
+ *
+ *  Filename: CancellationTokenTest.java
+ */
+package rx.bukkit.task;
+
+import org.junit.Test;
+import rx.Subscription;
+import rx.bukkit.PluginFixture;
+import rx.functions.Action0;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests cancelling {@link Task} chains through a {@link CancellationTokenSource}.
+ */
+public class CancellationTokenTest extends PluginFixture
+{
+    private final AtomicInteger _runs = new AtomicInteger();
+
+    private final Callable<Integer> _one = new Callable<Integer>()
+    {
+        @Override
+        public Integer call()
+        {
+            _runs.incrementAndGet();
+            return 1;
+        }
+    };
+
+    private final TaskFunc<Integer, Integer> _increment = new TaskFunc<Integer, Integer>()
+    {
+        @Override
+        public Integer call(Task<Integer> task) throws Exception
+        {
+            _runs.incrementAndGet();
+            return task.get() + 1;
+        }
+    };
+
+    @Test
+    public void cancelWithdrawsQueuedChain()
+    {
+        CancellationTokenSource source = new CancellationTokenSource();
+        Task<Integer> first = taskFactory.startNew(_one, source.getToken());
+        Task<Integer> second = first.continueWith(_increment, source.getToken());
+        Task<Integer> third = second.continueWith(_increment, source.getToken());
+
+        assertEquals(1, server.getPending());
+        source.cancel();
+
+        assertEquals(0, server.getPending());
+        server.runUntilIdle();
+        assertEquals(0, _runs.get());
+        assertTrue(first.isCancelled());
+        assertTrue(second.isCancelled());
+        assertTrue(third.isCancelled());
+    }
+
+    @Test
+    public void cancelledTokenNeverSchedules()
+    {
+        CancellationTokenSource source = new CancellationTokenSource();
+        source.cancel();
+
+        Task<Integer> task = taskFactory.startNew(_one, source.getToken());
+
+        assertTrue(task.isCancelled());
+        assertEquals(0, server.getPending());
+    }
+
+    @Test
+    public void cancelAfterCompletionHasNoEffect()
+    {
+        CancellationTokenSource source = new CancellationTokenSource();
+        Task<Integer> task = taskFactory.startNew(_one, source.getToken()).continueWith(_increment, source.getToken());
+        server.runUntilIdle();
+
+        source.cancel();
+
+        assertTrue(task.isCompletedSuccessfully());
+        assertEquals(2, (int) task.getRaw());
+    }
+
+    @Test
+    public void registrationIsCalledOnceAndCanBeWithdrawn()
+    {
+        CancellationTokenSource source = new CancellationTokenSource();
+        final AtomicInteger calls = new AtomicInteger();
+        Action0 count = new Action0()
+        {
+            @Override
+            public void call()
+            {
+                calls.incrementAndGet();
+            }
+        };
+
+        source.getToken().register(count);
+        Subscription withdrawn = source.getToken().register(count);
+        withdrawn.unsubscribe();
+
+        source.cancel();
+        source.cancel();
+
+        assertEquals(1, calls.get());
+        assertTrue(source.isCancellationRequested());
+
+        // registering after cancellation calls back right away
+        source.getToken().register(count);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void churnOnALongLivedTokenDoesNotGrowTheStack()
+    {
+        CancellationTokenSource source = new CancellationTokenSource();
+        final AtomicInteger calls = new AtomicInteger();
+        Action0 count = new Action0()
+        {
+            @Override
+            public void call()
+            {
+                calls.incrementAndGet();
+            }
+        };
+
+        // a live registration at the bottom and one on top keep flagged ones from being dropped as the top
+        source.getToken().register(count);
+        Subscription live = source.getToken().register(count);
+
+        for (int i = 0; i < 10000; i++)
+        {
+            source.getToken().register(count).unsubscribe();
+            Subscription top = source.getToken().register(count);
+            source.getToken().register(count).unsubscribe();
+            live.unsubscribe();
+            live = top;
+        }
+
+        assertTrue(source.getToken().size() < 10);
+
+        source.cancel();
+        assertEquals(2, calls.get());
+    }
+
+    @Test(expected = CancellationException.class)
+    public void throwIfCancellationRequested()
+    {
+        CancellationTokenSource source = new CancellationTokenSource();
+        source.getToken().throwIfCancellationRequested();
+        assertFalse(source.isCancellationRequested());
+
+        source.cancel();
+        source.getToken().throwIfCancellationRequested();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *  Copyright (c) 2014 Ryan Michela.
+ *
+ *  Filename: ParallelForTest.java
+ */
+package rx.bukkit.task;
+
+import org.junit.Test;
+import rx.bukkit.PluginFixture;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link TaskFactory#parallelFor(int, int, IndexAction)}.
+ */
+public class ParallelForTest extends PluginFixture
+{
+    @Test
+    public void callsTheActionOnceForEveryIndex()
+    {
+        final AtomicIntegerArray calls = new AtomicIntegerArray(1000);
+
+        Task<Void> task = taskFactory.parallelFor(0, calls.length(), new IndexAction()
+        {
+            @Override
+            public void call(int index)
+            {
+                calls.incrementAndGet(index);
+            }
+        });
+        server.runUntilIdle();
+
+        assertTrue(task.isCompletedSuccessfully());
+
+        for (int i = 0; i < calls.length(); i++)
+        {
+            assertEquals(1, calls.get(i));
+        }
+    }
+
+    @Test
+    public void faultsWithTheFirstException()
+    {
+        final IllegalStateException failure = new IllegalStateException("failed");
+
+        Task<Void> task = taskFactory.parallelFor(0, 100, new IndexAction()
+        {
+            @Override
+            public void call(int index)
+            {
+                if (index == 50)
+                {
+                    throw failure;
+                }
+            }
+        });
+        server.runUntilIdle();
+
+        assertEquals(failure, task.getException());
+    }
+
+    @Test
+    public void faultsWhenWorkersAreRejected()
+    {
+        final RejectedExecutionException rejected = new RejectedExecutionException("disabled");
+        taskFactory.backgroundExecutor = new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                throw rejected;
+            }
+        };
+
+        Task<Void> task = taskFactory.parallelFor(0, 1000, new IndexAction()
+        {
+            @Override
+            public void call(int index)
+            {
+            }
+        });
+
+        assertTrue(task.isFaulted());
+        assertEquals(rejected, task.getException());
+    }
+}
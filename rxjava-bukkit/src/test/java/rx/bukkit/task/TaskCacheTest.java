@@ -0,0 +1,120 @@
+/*
+ *  Copyright (c) 2014 Ryan Michela.
+ *
+ *  Filename: TaskCacheTest.java
+ */
+package rx.bukkit.task;
+
+import org.junit.Test;
+import rx.bukkit.PluginFixture;
+import rx.functions.Func1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests loading, refreshing and evicting the entries of a {@link TaskCache}.
+ */
+public class TaskCacheTest extends PluginFixture
+{
+    private final List<Runnable> _queued = new ArrayList<Runnable>();
+
+    private RejectedExecutionException _rejection;
+
+    private int _loads;
+
+    private final Executor _executor = new Executor()
+    {
+        @Override
+        public void execute(Runnable command)
+        {
+            if (_rejection != null)
+            {
+                throw _rejection;
+            }
+
+            _queued.add(command);
+        }
+    };
+
+    private final Func1<String, String> _loader = new Func1<String, String>()
+    {
+        @Override
+        public String call(String key)
+        {
+            return key + (++_loads);
+        }
+    };
+
+    @Test
+    public void rejectedLoadFailsItsTaskAndIsNotCached()
+    {
+        TaskCache<String, String> cache = taskFactory.newCache(_loader, _executor);
+        _rejection = new RejectedExecutionException("disabled");
+
+        Task<String> task = cache.get("a");
+
+        assertTrue(task.isFaulted());
+        assertEquals(_rejection, task.getException());
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getStats().getLoadFailures());
+
+        _rejection = null;
+        Task<String> retried = cache.get("a");
+        runQueued();
+
+        assertEquals("a1", retried.getRaw());
+    }
+
+    @Test
+    public void rejectedRefreshKeepsTheValueAndIsRetried()
+    {
+        TaskCache<String, String> cache = taskFactory.newCache(_loader, _executor).refreshAfterWrite(1, TimeUnit.NANOSECONDS);
+        cache.get("a");
+        runQueued();
+        _rejection = new RejectedExecutionException("disabled");
+
+        assertEquals("a1", cache.get("a").getRaw());
+        assertEquals(1, cache.getStats().getLoadFailures());
+
+        _rejection = null;
+        cache.get("a");
+        runQueued();
+
+        assertEquals("a2", cache.getIfPresent("a"));
+    }
+
+    @Test
+    public void refreshDoesNotCountAsAnAccess()
+    {
+        TaskCache<String, String> cache = taskFactory.newCache(_loader, _executor).maximumSize(2);
+        cache.get("a");
+        runQueued();
+        cache.refreshAfterWrite(1, TimeUnit.NANOSECONDS);
+
+        // a is refreshed in the background after b has been put, so a stays the least recently used
+        cache.get("a");
+        cache.put("b", "b");
+        runQueued();
+        cache.put("c", "c");
+
+        assertNull(cache.getIfPresent("a"));
+        assertEquals("b", cache.getIfPresent("b"));
+        assertEquals("c", cache.getIfPresent("c"));
+    }
+
+    private void runQueued()
+    {
+        while (!_queued.isEmpty())
+        {
+            _queued.remove(0).run();
+        }
+    }
+}
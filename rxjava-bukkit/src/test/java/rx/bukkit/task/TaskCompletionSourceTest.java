@@ -0,0 +1,123 @@
+/*
+ *  Copyright (c) 2014 Ryan Michela.
+ *
+ *  Filename: TaskCompletionSourceTest.java
+ */
+package rx.bukkit.task;
+
+import org.junit.Test;
+import rx.bukkit.PluginFixture;
+import rx.functions.Action1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests completing {@link Task}s and listeners through a {@link TaskCompletionSource}.
+ */
+public class TaskCompletionSourceTest extends PluginFixture
+{
+    private final List<String> _calls = new ArrayList<String>();
+
+    @Test
+    public void taskOfTheSourceIsSharedAndCompletedDirectly()
+    {
+        TaskCompletionSource<Integer> source = new TaskCompletionSource<Integer>();
+        Task<Integer> task = taskFactory.fromSource(source);
+
+        assertSame(task, taskFactory.fromSource(source));
+        assertFalse(task.isDone());
+
+        source.set(42);
+
+        assertTrue(task.isCompletedSuccessfully());
+        assertEquals(42, (int) task.getRaw());
+    }
+
+    @Test
+    public void taskOfACompletedSourceIsCompleted()
+    {
+        TaskCompletionSource<Integer> source = new TaskCompletionSource<Integer>();
+        IllegalStateException failure = new IllegalStateException("failed");
+        source.setException(failure);
+
+        Task<Integer> task = taskFactory.fromSource(source);
+
+        assertSame(failure, task.getException());
+    }
+
+    @Test
+    public void onlyTheFirstCompletionCounts()
+    {
+        TaskCompletionSource<Integer> source = new TaskCompletionSource<Integer>();
+        Task<Integer> task = taskFactory.fromSource(source);
+
+        assertTrue(source.trySet(1));
+        assertFalse(source.trySet(2));
+        assertFalse(source.trySetException(new IllegalStateException()));
+
+        assertEquals(1, (int) task.getRaw());
+    }
+
+    @Test
+    public void failingListenerNeitherFailsTheProducerNorSkipsOthers()
+    {
+        TaskCompletionSource<Integer> source = new TaskCompletionSource<Integer>();
+        source.addListener(record("first"), ignore());
+        source.addListener(new Action1<Integer>()
+        {
+            @Override
+            public void call(Integer value)
+            {
+                throw new IllegalStateException("broken listener");
+            }
+        }, ignore());
+        source.addListener(record("third"), ignore());
+        Task<Integer> task = taskFactory.fromSource(source);
+
+        source.set(1);
+
+        assertEquals(Arrays.asList("first", "third"), _calls);
+        assertTrue(task.isCompletedSuccessfully());
+    }
+
+    @Test
+    public void listenerAddedAfterCompletionIsCalledRightAway()
+    {
+        TaskCompletionSource<Integer> source = new TaskCompletionSource<Integer>();
+        source.set(1);
+
+        source.addListener(record("late"), ignore());
+
+        assertEquals(Arrays.asList("late"), _calls);
+    }
+
+    private Action1<Integer> record(final String name)
+    {
+        return new Action1<Integer>()
+        {
+            @Override
+            public void call(Integer value)
+            {
+                _calls.add(name);
+            }
+        };
+    }
+
+    private static Action1<Throwable> ignore()
+    {
+        return new Action1<Throwable>()
+        {
+            @Override
+            public void call(Throwable t)
+            {
+            }
+        };
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ *  Copyright (c) 2014 Ryan Michela.
+ *
+ *  Filename: TaskFusionTest.java
+ */
+package rx.bukkit.task;
+
+import org.junit.Test;
+import rx.bukkit.PluginFixture;
+
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that continuation chains on the same executor run in a single hop, while chains crossing executors do not.
+ */
+public class TaskFusionTest extends PluginFixture
+{
+    private final TaskFunc<Integer, Integer> _increment = new TaskFunc<Integer, Integer>()
+    {
+        @Override
+        public Integer call(Task<Integer> task) throws Exception
+        {
+            return task.get() + 1;
+        }
+    };
+
+    @Test
+    public void chainOnTheSameExecutorRunsInOneTick()
+    {
+        Task<Integer> task = taskFactory.startNew(constant(1));
+        Task<Integer> chain = task.continueWith(_increment).continueWith(_increment).continueWith(_increment);
+
+        assertEquals(1, server.tick());
+        assertTrue(chain.isCompletedSuccessfully());
+        assertEquals(4, (int) chain.getRaw());
+        assertEquals(0, server.getPending());
+    }
+
+    @Test
+    public void chainAcrossExecutorsHops()
+    {
+        Task<Integer> task = taskFactory.startNew(constant(1), taskFactory.backgroundExecutor);
+        Task<Integer> back = task.continueWith(_increment);
+
+        assertEquals(1, server.tick());
+        assertTrue(task.isCompletedSuccessfully());
+        assertFalse(back.isDone());
+
+        assertEquals(1, server.tick());
+        assertEquals(2, (int) back.getRaw());
+    }
+
+    @Test
+    public void continuationAddedToCompletedTaskIsDispatched()
+    {
+        Task<Integer> task = taskFactory.startNew(constant(1));
+        server.runUntilIdle();
+
+        Task<Integer> next = task.continueWith(_increment);
+
+        assertFalse(next.isDone());
+        server.runUntilIdle();
+        assertEquals(2, (int) next.getRaw());
+    }
+
+    @Test
+    public void faultPropagatesThroughFusedChain()
+    {
+        final IllegalStateException failure = new IllegalStateException("failed");
+        Task<Integer> task = taskFactory.startNew(new Callable<Integer>()
+        {
+            @Override
+            public Integer call()
+            {
+                throw failure;
+            }
+        });
+        Task<Integer> chain = task.continueWith(_increment).continueWith(_increment);
+
+        assertEquals(1, server.tick());
+        assertTrue(chain.isFaulted());
+    }
+
+    private static Callable<Integer> constant(final int value)
+    {
+        return new Callable<Integer>()
+        {
+            @Override
+            public Integer call()
+            {
+                return value;
+            }
+        };
+    }
+}
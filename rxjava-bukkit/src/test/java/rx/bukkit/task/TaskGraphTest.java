@@ -0,0 +1,156 @@
+/*
+ *  Copyright (c) 2014 Ryan Michela.
+ *
+ *  Filename: TaskGraphTest.java
+ */
+package rx.bukkit.task;
+
+import org.junit.Test;
+import rx.bukkit.PluginFixture;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the dependency-aware scheduling and the failure semantics of {@link TaskGraph}.
+ */
+public class TaskGraphTest extends PluginFixture
+{
+    /** The names of the nodes in the order they ran. */
+    private final List<String> _ran = new CopyOnWriteArrayList<String>();
+
+    @Test
+    public void diamondRunsNodesAfterTheirDependencies()
+    {
+        TaskGraph graph = taskFactory.newGraph()
+                .add("profile", constant("profile", 1))
+                .add("inventory", sum("inventory", "profile"), "profile")
+                .add("stats", sum("stats", "profile"), "profile")
+                .addOnMainThread("render", sum("render", "inventory", "stats"), "inventory", "stats");
+
+        Task<TaskGraph.Results> run = graph.run();
+        server.runUntilIdle();
+
+        assertTrue(run.isCompletedSuccessfully());
+        assertEquals(4, _ran.size());
+        assertEquals("profile", _ran.get(0));
+        assertEquals("render", _ran.get(3));
+        assertEquals(2, (int) run.getRaw().<Integer>get("inventory"));
+        assertEquals(5, (int) run.getRaw().<Integer>get("render"));
+    }
+
+    @Test
+    public void independentBranchesRunInTheSameTick()
+    {
+        Task<TaskGraph.Results> run = taskFactory.newGraph()
+                .add("a", constant("a", 1))
+                .add("b", constant("b", 2))
+                .run();
+
+        server.tick();
+
+        assertEquals(2, _ran.size());
+        server.runUntilIdle();
+        assertTrue(run.isCompletedSuccessfully());
+    }
+
+    @Test
+    public void failureCancelsDependentsAndLetsIndependentNodesFinish()
+    {
+        final IllegalStateException failure = new IllegalStateException("failed");
+
+        Task<TaskGraph.Results> run = taskFactory.newGraph()
+                .add("failing", new TaskGraph.NodeFunc<Integer>()
+                {
+                    @Override
+                    public Integer call(TaskGraph.Results results)
+                    {
+                        throw failure;
+                    }
+                })
+                .add("dependent", sum("dependent", "failing"), "failing")
+                .add("independent", constant("independent", 1))
+                .add("later", sum("later", "independent"), "independent")
+                .run();
+
+        server.runUntilIdle();
+
+        assertTrue(run.isFaulted());
+        assertSame(failure, run.getException());
+        assertFalse(_ran.contains("dependent"));
+        assertTrue(_ran.contains("later"));
+    }
+
+    @Test
+    public void cancellingTheRunCancelsItsNodes()
+    {
+        Task<TaskGraph.Results> run = taskFactory.newGraph()
+                .add("a", constant("a", 1))
+                .add("b", sum("b", "a"), "a")
+                .run();
+
+        run.cancel(false);
+        server.runUntilIdle();
+
+        assertTrue(run.isCancelled());
+        assertTrue(_ran.isEmpty());
+    }
+
+    @Test
+    public void emptyGraphCompletesRightAway()
+    {
+        Task<TaskGraph.Results> run = taskFactory.newGraph().run();
+
+        assertTrue(run.isCompletedSuccessfully());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void dependenciesHaveToBeAddedFirst()
+    {
+        taskFactory.newGraph().add("b", sum("b", "a"), "a");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void namesHaveToBeUnique()
+    {
+        taskFactory.newGraph().add("a", constant("a", 1)).add("a", constant("a", 2));
+    }
+
+    private TaskGraph.NodeFunc<Integer> constant(final String name, final int value)
+    {
+        return new TaskGraph.NodeFunc<Integer>()
+        {
+            @Override
+            public Integer call(TaskGraph.Results results)
+            {
+                _ran.add(name);
+                return value;
+            }
+        };
+    }
+
+    private TaskGraph.NodeFunc<Integer> sum(final String name, final String... dependencies)
+    {
+        return new TaskGraph.NodeFunc<Integer>()
+        {
+            @Override
+            public Integer call(TaskGraph.Results results)
+            {
+                _ran.add(name);
+                int sum = 1;
+
+                for (String dependency : dependencies)
+                {
+                    sum += results.<Integer>get(dependency);
+                }
+
+                return sum;
+            }
+        };
+    }
+}
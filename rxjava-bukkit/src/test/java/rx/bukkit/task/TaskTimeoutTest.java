@@ -0,0 +1,183 @@
+/*
+ *  Copyright (c) 2014 Ryan Michela.
+ *
+ *  Filename: TaskTimeoutTest.java
+ */
+package rx.bukkit.task;
+
+import org.junit.Test;
+import rx.bukkit.PluginFixture;
+import rx.functions.Func1;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the tick driven {@link Task#withTimeout} and {@link TaskFactory#retry}.
+ */
+public class TaskTimeoutTest extends PluginFixture
+{
+    @Test
+    public void timesOutAfterTheGivenTicks()
+    {
+        Task<Integer> pending = taskFactory.fromSource(new TaskCompletionSource<Integer>());
+        Task<Integer> timed = pending.withTimeout(5);
+
+        for (int i = 0; i < 3; i++)
+        {
+            server.tick();
+        }
+        assertFalse(timed.isDone());
+
+        // the timer stops once its last timeout has fired
+        server.runUntilIdle();
+        assertTrue(timed.isFaulted());
+        assertTrue(timed.getException() instanceof TimeoutException);
+        assertFalse(pending.isDone());
+    }
+
+    @Test
+    public void completesWithTheResultBeforeTheTimeout()
+    {
+        TaskCompletionSource<Integer> source = new TaskCompletionSource<Integer>();
+        Task<Integer> timed = taskFactory.fromSource(source).withTimeout(100);
+
+        server.tick();
+        source.set(42);
+        server.runUntilIdle();
+
+        assertTrue(timed.isCompletedSuccessfully());
+        assertEquals(42, (int) timed.getRaw());
+        assertEquals(0, server.getPending());
+    }
+
+    @Test
+    public void retriesUntilTheCallableSucceeds()
+    {
+        final AtomicInteger attempts = new AtomicInteger();
+        Task<Integer> task = taskFactory.retry(new Callable<Integer>()
+        {
+            @Override
+            public Integer call()
+            {
+                if (attempts.incrementAndGet() < 3)
+                {
+                    throw new IllegalStateException("attempt " + attempts.get());
+                }
+                return attempts.get();
+            }
+        }, new RetryPolicy(5, 2, 10));
+
+        server.tick();
+        assertEquals(1, attempts.get());
+        assertFalse(task.isDone());
+
+        server.runUntilIdle();
+        assertEquals(3, attempts.get());
+        assertEquals(3, (int) task.getRaw());
+    }
+
+    @Test
+    public void failsWithTheLastFailureOnceAttemptsAreExhausted()
+    {
+        final AtomicInteger attempts = new AtomicInteger();
+        Task<Integer> task = taskFactory.retry(failing(attempts), new RetryPolicy(3, 1, 1));
+
+        server.runUntilIdle();
+
+        assertEquals(3, attempts.get());
+        assertTrue(task.isFaulted());
+        assertEquals("attempt 3", task.getException().getMessage());
+    }
+
+    @Test
+    public void retriesOnlyAcceptedExceptions()
+    {
+        final AtomicInteger attempts = new AtomicInteger();
+        RetryPolicy policy = new RetryPolicy(5, 1, 1).retryOn(new Func1<Throwable, Boolean>()
+        {
+            @Override
+            public Boolean call(Throwable t)
+            {
+                return !(t instanceof IllegalStateException);
+            }
+        });
+        Task<Integer> task = taskFactory.retry(failing(attempts), policy);
+
+        server.runUntilIdle();
+
+        assertEquals(1, attempts.get());
+        assertTrue(task.isFaulted());
+    }
+
+    @Test
+    public void failsWithTheExceptionOfAFailingPredicate()
+    {
+        final AtomicInteger attempts = new AtomicInteger();
+        final IllegalArgumentException broken = new IllegalArgumentException("broken predicate");
+        RetryPolicy policy = new RetryPolicy(5, 1, 1).retryOn(new Func1<Throwable, Boolean>()
+        {
+            @Override
+            public Boolean call(Throwable t)
+            {
+                throw broken;
+            }
+        });
+        Task<Integer> task = taskFactory.retry(failing(attempts), policy);
+
+        server.runUntilIdle();
+
+        assertEquals(1, attempts.get());
+        assertSame(broken, task.getException());
+        assertEquals("attempt 1", broken.getSuppressed()[0].getMessage());
+    }
+
+    @Test
+    public void failsWithTheLastFailureWhenDisabledBetweenAttempts()
+    {
+        final AtomicInteger attempts = new AtomicInteger();
+        Task<Integer> task = taskFactory.retry(failing(attempts), new RetryPolicy(5, 100, 100));
+
+        server.tick();
+        assertEquals(1, attempts.get());
+        assertFalse(task.isDone());
+
+        plugin.disable();
+
+        assertTrue(task.isFaulted());
+        assertEquals("attempt 1", task.getException().getMessage());
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void cancellingStopsFurtherAttempts()
+    {
+        final AtomicInteger attempts = new AtomicInteger();
+        Task<Integer> task = taskFactory.retry(failing(attempts), new RetryPolicy(5, 2, 2));
+
+        server.tick();
+        task.cancel(false);
+        server.runUntilIdle();
+
+        assertEquals(1, attempts.get());
+        assertTrue(task.isCancelled());
+    }
+
+    private static Callable<Integer> failing(final AtomicInteger attempts)
+    {
+        return new Callable<Integer>()
+        {
+            @Override
+            public Integer call()
+            {
+                throw new IllegalStateException("attempt " + attempts.incrementAndGet());
+            }
+        };
+    }
+}